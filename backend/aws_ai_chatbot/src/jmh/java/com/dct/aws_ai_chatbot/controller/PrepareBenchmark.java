@@ -0,0 +1,106 @@
+package com.dct.aws_ai_chatbot.controller;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import com.dct.aws_ai_chatbot.service.ClaudeService;
+import com.dct.aws_ai_chatbot.service.CompletionCache;
+import com.dct.aws_ai_chatbot.service.ContentExtractService;
+import com.dct.aws_ai_chatbot.service.ContextRetriever;
+import com.dct.aws_ai_chatbot.service.ExtractionCache;
+import com.dct.aws_ai_chatbot.service.Fixtures;
+import com.dct.aws_ai_chatbot.service.PromptBudgetPlanner;
+import com.dct.aws_ai_chatbot.service.RequestStages;
+import com.dct.aws_ai_chatbot.service.ThreadMemoryService;
+import com.dct.aws_ai_chatbot.service.ThreadMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The upload completion endpoint up to the Bedrock call: extraction (a cache hit after the first turn), the
+ * memory read (BM25 selection once it outgrows the retrieval budget), persisting the sticky upload and
+ * wrapping. Bedrock is replaced by an answer that completes at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrepareBenchmark {
+
+    @Param({"16000", "110000"})
+    public int memoryChars;
+
+    @Param({"50000"})
+    public int turnChars;
+
+    private ChatController controller;
+    private RequestStages stages;
+    private ContentExtractService extractor;
+    private ChatRequest req;
+    private MultipartFile[] files;
+
+    @Setup
+    public void setup() {
+        var registry = new SimpleMeterRegistry();
+        var memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 120_000, 64L * 1024 * 1024, 60);
+        var retriever = new ContextRetriever(memory, true, 12, 6000, 1500);
+        extractor = new ContentExtractService(null, new ExtractionCache(64, 8_000_000, 60), registry,
+                2, 60_000, 1000, 8, 0, 200, 4, 4_194_304, "", 16_777_216);
+        stages = new RequestStages(registry, 25_000, 64);
+        var claude = new ClaudeService(null, null, new PromptBudgetPlanner(200_000, 2_000, 4), null, null, registry) {
+            @Override
+            public CompletableFuture<String> chatOnceAsync(WrappedRequest wrapped, String threadId) {
+                return CompletableFuture.completedFuture("context blocks: " + wrapped.turnContext().size());
+            }
+        };
+        controller = new ChatController(claude, memory, null, extractor, retriever,
+                new CompletionCache(512, 4_000_000, 120), stages, registry);
+        ReflectionTestUtils.setField(controller, "completionTimeoutMs", 30_000L);
+
+        for (int i = 0; i * 8000 < memoryChars; i++) {
+            memory.append("bench", "doc-" + i + ".pdf", Fixtures.prose(Math.min(8000, memoryChars - i * 8000), i));
+        }
+        req = new ChatRequest(List.of(
+                new Message("user", "Summarize the upload"),
+                new Message("assistant", Fixtures.prose(800, 1)),
+                new Message("user", "What does the retrieval policy say about the token budget and cache?")
+        ), "Be concise.", 1024, null, null);
+        files = new MultipartFile[] {new MockMultipartFile("file", "report.txt", "text/plain",
+                Fixtures.prose(turnChars, 5).getBytes(StandardCharsets.UTF_8))};
+    }
+
+    @TearDown
+    public void tearDown() {
+        stages.shutdown();
+        ReflectionTestUtils.invokeMethod(extractor, "shutdown");
+    }
+
+    @Benchmark
+    public Object prepare() throws Exception {
+        // preparation runs on the stage pool; wait for the answer it hands to the (stubbed) Bedrock call
+        var done = new CompletableFuture<Object>();
+        controller.chatUploadCompletion(req, files, "bench", null).setResultHandler(done::complete);
+        return done.get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,122 @@
+package com.dct.aws_ai_chatbot.controller;
+
+import com.dct.aws_ai_chatbot.AwsAiChatbotApplication;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: one fresh JVM per fork, {@code contextToFirstResponse} boots the Spring context and serves the
+ * first completion; {@code firstResponse} times only the first completion after boot (what priming moves
+ * into the snapshot). Bedrock is a local Converse stub, so no AWS access is needed. Raise {@code -f} for
+ * tighter error bars: each fork yields one sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    private static final byte[] CONVERSE = """
+            {"output":{"message":{"role":"assistant","content":[{"text":"ok"}]}},"stopReason":"end_turn",
+             "usage":{"inputTokens":12,"outputTokens":1,"totalTokens":13},"metrics":{"latencyMs":5}}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"off", "on"})
+    public String priming;
+
+    private HttpServer bedrock;
+    private ConfigurableApplicationContext context;
+    private final ChatRequest req = new ChatRequest(
+            List.of(new Message("user", "Hello, what can you do?")), "Be concise.", 64, 0.0, null);
+
+    @Setup(Level.Trial)
+    public void stub() throws Exception {
+        bedrock = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        bedrock.createContext("/", ex -> {
+            ex.getRequestBody().readAllBytes();
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, CONVERSE.length);
+            ex.getResponseBody().write(CONVERSE);
+            ex.close();
+        });
+        bedrock.start();
+        // static credentials via system properties: keeps the default chain off IMDS
+        System.setProperty("aws.accessKeyId", "bench");
+        System.setProperty("aws.secretAccessKey", "bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStub() {
+        bedrock.stop(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    private ConfigurableApplicationContext boot() {
+        return new SpringApplicationBuilder(AwsAiChatbotApplication.class)
+                .web(WebApplicationType.NONE)
+                // command-line args: these must win over application.properties
+                .run("--app.bedrock.endpoint=http://127.0.0.1:" + bedrock.getAddress().getPort(),
+                        "--app.startup.prime-on-start=" + "on".equals(priming),
+                        "--logging.level.root=WARN");
+    }
+
+    @Benchmark
+    public Object contextToFirstResponse() throws Exception {
+        context = boot();
+        return await(context.getBean(ChatController.class).chatCompletion(req, null, null));
+    }
+
+    /** Boot happens in setup; only the first request after it is timed. */
+    @State(Scope.Thread)
+    public static class Booted {
+        ChatController controller;
+
+        @Setup(Level.Iteration)
+        public void boot(StartupBenchmark bench) {
+            bench.context = bench.boot();
+            controller = bench.context.getBean(ChatController.class);
+        }
+    }
+
+    @Benchmark
+    public Object firstResponse(Booted booted) throws Exception {
+        return await(booted.controller.chatCompletion(req, null, null));
+    }
+
+    private static Object await(DeferredResult<?> result) throws Exception {
+        var done = new CompletableFuture<Object>();
+        result.setResultHandler(done::complete);
+        return done.get(60, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,86 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ContentExtractService#extractText} per document kind.
+ * {@code cold} disables the extraction cache (every call parses); {@code warm} measures digest + cache hit,
+ * the sticky-file path. Add {@code -p kind=pdf,docx,doc,txt} once a sample.doc fixture is present.
+ * {@code threads} sizes the extraction pool: compare 1 against the core count for the PDF page-range and
+ * multi-file ({@code extractAll}, four distinct uploads) speedup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentExtractBenchmark {
+
+    @Param({"pdf", "docx", "txt"})
+    public String kind;
+
+    @Param({"20", "200"})
+    public int pages;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private ContentExtractService service;
+    private MockMultipartFile file;
+    private List<MultipartFile> uploads;
+
+    @Setup
+    public void setup() throws Exception {
+        var extractionCache = "warm".equals(cache)
+                ? new ExtractionCache(256, 8_000_000, 60)
+                : new ExtractionCache(0, 0, 0); // max-chars 0: nothing is ever stored
+        // budget high enough to never cut a run short; page cap above the largest fixture
+        service = new ContentExtractService(null, extractionCache, new SimpleMeterRegistry(), threads, 600_000, 1000, 8, 0, 200, 4, 4_194_304, "", 16_777_216);
+        file = new MockMultipartFile("file", "sample." + kind, null, Fixtures.load(kind, pages));
+        uploads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            // distinct bytes per upload, so neither the cache nor load coalescing merges them
+            uploads.add(new MockMultipartFile("file", i + "-sample." + kind, null, Fixtures.load(kind, pages + i)));
+        }
+        if (service.extractText(file).startsWith("[error")) {
+            throw new IllegalStateException(service.extractText(file));
+        }
+    }
+
+    @Benchmark
+    public String extractText() {
+        return service.extractText(file);
+    }
+
+    @Benchmark
+    public Object extractAll() {
+        return service.extractAll(uploads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+}
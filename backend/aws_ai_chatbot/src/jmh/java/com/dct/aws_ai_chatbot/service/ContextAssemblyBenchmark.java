@@ -0,0 +1,95 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One turn's context path end to end: memory read (full, or BM25 chunks past the retrieval budget), this turn's
+ * file and link, budget planning and Converse message building. {@code newPage=true} appends a fetched page to
+ * the thread every turn, so the memory's rendered blocks are never all reusable. Read {@code gc.alloc.rate.norm}
+ * with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+
+    @Param({"6000", "100000"})
+    public int retrievalBudgetTokens;
+
+    @Param({"false", "true"})
+    public boolean newPage;
+
+    @Param({"110000"})
+    public int memoryChars;
+
+    private ThreadMemoryService memory;
+    private ContextRetriever retriever;
+    private PromptBudgetPlanner planner;
+    private ClaudeService claude;
+    private ChatRequest req;
+    private List<ContextSegment> turn;
+    private String[] pages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 120_000, 64L * 1024 * 1024, 60);
+        retriever = new ContextRetriever(memory, true, 12, retrievalBudgetTokens, 1500);
+        planner = new PromptBudgetPlanner(200_000, 2_000, 4);
+        claude = new ClaudeService(null, null, planner, null, null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(claude, "promptCache", true);
+        ReflectionTestUtils.setField(claude, "cacheMinTokens", 1024);
+
+        for (int i = 0; i * 8000 < memoryChars; i++) {
+            memory.append("bench", "doc-" + i + ".pdf", Fixtures.prose(Math.min(8000, memoryChars - i * 8000), i));
+        }
+        req = new ChatRequest(List.of(
+                new Message("user", "Summarize the upload"),
+                new Message("assistant", Fixtures.prose(800, 1)),
+                new Message("user", "What does the retrieval policy say about the token budget and cache?")
+        ), "Be concise.", 1024, null, null);
+        turn = List.of(
+                ContextSegment.of(null, "--- FILES UPLOADED THIS TURN ---"),
+                ContextSegment.of("report.docx", Fixtures.prose(50_000, 5)),
+                ContextSegment.of(null, "--- LINKS FETCHED THIS TURN ---"),
+                ContextSegment.of("https://example.com/a", Fixtures.prose(10_000, 6)));
+        pages = new String[8];
+        for (int i = 0; i < pages.length; i++) pages[i] = Fixtures.prose(3000, 100 + i);
+    }
+
+    @Benchmark
+    public Object turn() {
+        if (newPage) {
+            int i = next++ % pages.length;
+            memory.append("bench", "https://example.com/p" + i, pages[i]);
+        }
+        var selection = retriever.select("bench", req.messages().get(2).content());
+        var turnContext = new ArrayList<ContextSegment>(turn);
+        if (!selection.fullContext()) turnContext.addAll(0, selection.context());
+        var wrapped = new WrappedRequest(req, selection.fullContext() ? selection.context() : null, turnContext);
+        return claude.toPrompt(planner.plan(wrapped).request());
+    }
+}
@@ -0,0 +1,95 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs. Documents are generated so the module needs no binary fixtures;
+ * a real file dropped into src/jmh/resources/fixtures/sample.&lt;ext&gt; takes precedence (needed for .doc,
+ * which POI cannot write).
+ */
+public final class Fixtures {
+
+    private static final String[] WORDS = {
+            "latency", "request", "bedrock", "context", "thread", "memory", "upload", "document", "answer",
+            "question", "model", "token", "budget", "cache", "stream", "page", "section", "retrieval", "policy",
+            "the", "of", "and", "to", "in", "is", "for", "with", "on", "that", "by", "this", "from", "at"
+    };
+
+    private Fixtures() {}
+
+    /** Prose-like text of about {@code chars} characters, split into paragraphs. */
+    public static String prose(int chars, long seed) {
+        var rnd = new Random(seed);
+        var sb = new StringBuilder(chars + 64);
+        int sentence = 0;
+        while (sb.length() < chars) {
+            int words = 8 + rnd.nextInt(14);
+            for (int i = 0; i < words; i++) {
+                String w = WORDS[rnd.nextInt(WORDS.length)];
+                if (i == 0) w = Character.toUpperCase(w.charAt(0)) + w.substring(1);
+                sb.append(w).append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentence % 5 == 0) sb.append("\n\n");
+        }
+        sb.setLength(chars);
+        return sb.toString();
+    }
+
+    public static byte[] load(String kind, int pages) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/sample." + kind)) {
+            if (in != null) return in.readAllBytes();
+        }
+        return switch (kind) {
+            case "pdf" -> pdf(pages);
+            case "docx" -> docx(pages);
+            case "txt" -> prose(pages * 3000, 7).getBytes();
+            default -> throw new IllegalArgumentException("no generator for ." + kind
+                    + "; add src/jmh/resources/fixtures/sample." + kind);
+        };
+    }
+
+    static byte[] pdf(int pages) throws IOException {
+        var font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            for (int p = 0; p < pages; p++) {
+                var page = new PDPage();
+                doc.addPage(page);
+                try (var cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(font, 10);
+                    cs.setLeading(12);
+                    cs.newLineAtOffset(50, 740);
+                    for (String line : prose(3000, p).replace('\n', ' ').split("(?<=\\G.{95})")) {
+                        cs.showText(line);
+                        cs.newLine();
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    static byte[] docx(int pages) throws IOException {
+        try (var doc = new XWPFDocument(); var out = new ByteArrayOutputStream()) {
+            for (String para : prose(pages * 3000, 11).split("\n\n")) {
+                doc.createParagraph().createRun().setText(para);
+            }
+            var table = doc.createTable(pages * 4, 3);
+            table.getRows().forEach(r -> r.getTableCells().forEach(c -> c.setText(prose(40, 3))));
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request building for long conversations: {@link ClaudeService#toPrompt} (Bedrock message conversion and
+ * cache checkpoints) and the budget planner that runs before it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int messages;
+
+    @Param({"24000"})
+    public int contextChars;
+
+    private ClaudeService claude;
+    private PromptBudgetPlanner planner;
+    private WrappedRequest wrapped;
+
+    @Setup
+    public void setup() {
+        planner = new PromptBudgetPlanner(200_000, 2_000, 4);
+        claude = new ClaudeService(null, null, planner, null, null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(claude, "promptCache", true);
+        ReflectionTestUtils.setField(claude, "cacheMinTokens", 1024);
+
+        var history = new ArrayList<Message>(messages);
+        for (int i = 0; i < messages; i++) {
+            boolean user = i % 2 == 0 || i == messages - 1;
+            history.add(new Message(user ? "user" : "assistant", Fixtures.prose(user ? 200 : 900, i)));
+        }
+        var req = new ChatRequest(history, Fixtures.prose(1500, 1), 1024, 0.2, null);
+        wrapped = new WrappedRequest(req, List.of(ContextSegment.of("notes.pdf", Fixtures.prose(contextChars, 2))),
+                List.of(ContextSegment.of(null, "--- LINKS FETCHED THIS TURN ---"),
+                        ContextSegment.of("https://example.com", Fixtures.prose(contextChars / 4, 3))));
+    }
+
+    @Benchmark
+    public Object toPrompt() {
+        return claude.toPrompt(wrapped);
+    }
+
+    @Benchmark
+    public Object planAndBuild() {
+        return claude.toPrompt(planner.plan(wrapped).request());
+    }
+}
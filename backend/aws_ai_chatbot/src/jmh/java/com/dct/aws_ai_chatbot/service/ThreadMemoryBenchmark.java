@@ -0,0 +1,95 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThreadMemoryService#append} and {@link ThreadMemoryService#context} racing on a few chat threads,
+ * with per-thread trimming and the global byte budget both in play. {@code threads=1} is the worst case:
+ * every writer and reader contends on one slot. {@code store=log} adds the write-through to the durable log.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadMemoryBenchmark {
+
+    @Param({"1", "16"})
+    public int threads;
+
+    @Param({"4000"})
+    public int segmentChars;
+
+    @Param({"none", "log"})
+    public String store;
+
+    private ThreadMemoryService memory;
+    private LogThreadMemoryStore logStore;
+    private Path dir;
+    private String[] ids;
+    private String[] texts;
+
+    @Setup
+    public void setup() throws IOException {
+        ThreadMemoryStore backing = ThreadMemoryStore.NONE;
+        if (store.equals("log")) {
+            dir = Files.createTempDirectory("memory-log-bench");
+            logStore = new LogThreadMemoryStore(dir, 64L << 20, false, 120_000, Duration.ofHours(1), 5, 0.5);
+            backing = logStore;
+        }
+        memory = new ThreadMemoryService(backing, 120_000, 8L * 1024 * 1024, 60);
+        ids = new String[threads];
+        for (int i = 0; i < threads; i++) ids[i] = "thread-" + i;
+        texts = new String[8];
+        for (int i = 0; i < texts.length; i++) texts[i] = Fixtures.prose(segmentChars, i);
+        for (String id : ids) {
+            for (int i = 0; i < 30; i++) memory.append(id, "seed-" + i, texts[i % texts.length]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (logStore == null) return;
+        logStore.close();
+        try (var files = Files.list(dir)) {
+            for (var f : files.toList()) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void append() {
+        var rnd = ThreadLocalRandom.current();
+        memory.append(ids[rnd.nextInt(ids.length)], "doc.pdf", texts[rnd.nextInt(texts.length)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public Object context() {
+        return memory.context(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+}
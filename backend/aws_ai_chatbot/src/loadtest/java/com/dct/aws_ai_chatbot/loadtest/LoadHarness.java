@@ -0,0 +1,402 @@
+package com.dct.aws_ai_chatbot.loadtest;
+
+import com.dct.aws_ai_chatbot.AwsAiChatbotApplication;
+import com.dct.aws_ai_chatbot.stub.AwsStub;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: boots the application in-process with Bedrock and Textract pointed at a local
+ * {@link AwsStub}, then drives it over HTTP with a closed-loop mix of workloads:
+ * <ul>
+ *   <li>{@code text}: {@code /api/chat/completion} with a plain question;</li>
+ *   <li>{@code upload}: {@code /api/chat/upload/completion} with a text file, a text PDF or a scanned PDF (OCR);</li>
+ *   <li>{@code link}: {@code /api/chat/completion} with a link to a stub page (fetch + main-content extraction);</li>
+ *   <li>{@code stream}: {@code /api/chat/stream}, read to the end of the SSE stream.</li>
+ * </ul>
+ * After a warm-up it reports throughput, latency percentiles per workload, peak and live heap, GC, and what
+ * the stub served. Heap numbers cover the whole JVM (app, stub and clients share it).
+ * <p>
+ * Configured with system properties: {@code load.clients} (32), {@code load.seconds} (30),
+ * {@code load.warmup-seconds} (5), {@code load.mix} ("text=5,upload=2,link=2,stream=1"),
+ * {@code load.upload-variants} (distinct files per kind; fewer = more extraction-cache hits, 8),
+ * {@code load.link-pages} (1000), {@code load.thread-ids} (true: one thread memory per client),
+ * {@code load.seed} (42), the {@code stub.*} options of {@link AwsStub.Options}, and any {@code app.*}
+ * property of the application.
+ */
+public final class LoadHarness {
+
+    enum Workload { TEXT, UPLOAD, LINK, STREAM }
+
+    private record Upload(String name, String contentType, byte[] bytes) {}
+
+    private record Sample(Workload workload, long nanos, int status) {}
+
+    private LoadHarness() {}
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("load.clients", 32);
+        int seconds = Integer.getInteger("load.seconds", 30);
+        int warmup = Integer.getInteger("load.warmup-seconds", 5);
+        var mix = parseMix(System.getProperty("load.mix", "text=5,upload=2,link=2,stream=1"));
+        int variants = Integer.getInteger("load.upload-variants", 8);
+        int linkPages = Integer.getInteger("load.link-pages", 1000);
+        boolean threadIds = Boolean.parseBoolean(System.getProperty("load.thread-ids", "true"));
+        long seed = Long.getLong("load.seed", 42);
+
+        var stubOptions = AwsStub.Options.fromSystemProperties();
+        try (var stub = AwsStub.start(stubOptions, 0)) {
+            // system properties outrank application.properties; anything given on the command line wins
+            setIfAbsent("app.bedrock.endpoint", stub.endpoint());
+            setIfAbsent("app.textract.endpoint", stub.endpoint());
+            setIfAbsent("app.textract.region", "us-east-1");
+            setIfAbsent("app.memory.store", "none");
+            setIfAbsent("server.port", "0");
+            setIfAbsent("logging.level.root", "WARN");
+            setIfAbsent("spring.main.banner-mode", "off");
+            setIfAbsent("aws.accessKeyId", "stub");
+            setIfAbsent("aws.secretAccessKey", "stub");
+
+            var app = new SpringApplicationBuilder(AwsAiChatbotApplication.class).run();
+            try {
+                int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+                var uploads = uploads(variants, seed);
+                System.out.printf(Locale.ROOT, "Load test: %d clients, %d s after %d s warm-up, mix %s, %d upload "
+                                + "variants, stub %s%n", clients, seconds, warmup, mix, uploads.size(), stubOptions);
+
+                var run = new Run(URI.create("http://127.0.0.1:" + port), stub.endpoint(), mix, uploads, linkPages,
+                        threadIds, seed);
+                run.drive(clients, warmup, seconds);
+                run.report(seconds, stub.stats());
+            } finally {
+                app.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    // ----------------------------
+    // driving
+    // ----------------------------
+
+    private static final class Run {
+        private final URI app;
+        private final String stub;
+        private final List<Workload> weighted = new ArrayList<>();
+        private final List<Upload> uploads;
+        private final int linkPages;
+        private final boolean threadIds;
+        private final long seed;
+        private final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        private final AtomicLong requestIds = new AtomicLong();
+        private final List<Sample> samples = new ArrayList<>();
+
+        private long peakHeap;
+        private long gcCount;
+        private long gcMillis;
+
+        Run(URI app, String stub, Map<Workload, Integer> mix, List<Upload> uploads, int linkPages,
+            boolean threadIds, long seed) {
+            this.app = app;
+            this.stub = stub;
+            mix.forEach((w, weight) -> {
+                for (int i = 0; i < weight; i++) weighted.add(w);
+            });
+            if (weighted.isEmpty()) throw new IllegalArgumentException("load.mix has no positive weight");
+            this.uploads = uploads;
+            this.linkPages = linkPages;
+            this.threadIds = threadIds;
+            this.seed = seed;
+        }
+
+        void drive(int clients, int warmupSeconds, int seconds) throws Exception {
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+            var heap = ManagementFactory.getMemoryMXBean();
+            var sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "heap-sampler");
+                t.setDaemon(true);
+                return t;
+            });
+            sampler.scheduleAtFixedRate(() -> {
+                if (System.nanoTime() >= measureFrom) {
+                    synchronized (this) {
+                        peakHeap = Math.max(peakHeap, heap.getHeapMemoryUsage().getUsed());
+                    }
+                }
+            }, 0, 50, TimeUnit.MILLISECONDS);
+
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            var futures = new ArrayList<Future<List<Sample>>>();
+            long[] gcBefore = new long[2];
+            var gcSnapshot = Executors.newSingleThreadScheduledExecutor();
+            gcSnapshot.schedule(() -> gc(gcBefore), Math.max(0, measureFrom - System.nanoTime()), TimeUnit.NANOSECONDS);
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                futures.add(pool.submit((Callable<List<Sample>>) () -> client(client, measureFrom, end)));
+            }
+            for (var f : futures) samples.addAll(f.get());
+            long[] gcAfter = new long[2];
+            gc(gcAfter);
+            gcCount = gcAfter[0] - gcBefore[0];
+            gcMillis = gcAfter[1] - gcBefore[1];
+
+            pool.shutdownNow();
+            gcSnapshot.shutdownNow();
+            sampler.shutdownNow();
+        }
+
+        /** One closed-loop client: the next request goes out when the previous answer is in. */
+        private List<Sample> client(int client, long measureFrom, long end) {
+            var rnd = new Random(seed * 31 + client);
+            var out = new ArrayList<Sample>();
+            String threadId = threadIds ? "load-" + client : null;
+            while (System.nanoTime() < end) {
+                var workload = weighted.get(rnd.nextInt(weighted.size()));
+                var request = request(workload, client, threadId, rnd);
+                long t0 = System.nanoTime();
+                int status;
+                try {
+                    status = http.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+                } catch (IOException e) {
+                    status = -1;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (t0 >= measureFrom) out.add(new Sample(workload, System.nanoTime() - t0, status));
+            }
+            return out;
+        }
+
+        private HttpRequest request(Workload workload, int client, String threadId, Random rnd) {
+            // unique questions: identical concurrent requests would share one completion
+            String id = client + "-" + requestIds.incrementAndGet();
+            var b = HttpRequest.newBuilder().timeout(Duration.ofMinutes(2));
+            if (threadId != null) b.header("X-Thread-Id", threadId);
+            return switch (workload) {
+                case TEXT -> json(b, "/api/chat/completion",
+                        "Question " + id + ": summarise the quarterly figures in three bullet points.");
+                case LINK -> json(b, "/api/chat/completion", "Read " + stub + "/pages/" + rnd.nextInt(linkPages)
+                        + ".html and list its key points (request " + id + ").");
+                case STREAM -> json(b, "/api/chat/stream",
+                        "Question " + id + ": explain the figures step by step.");
+                case UPLOAD -> multipart(b, "What does this file say? (request " + id + ")",
+                        uploads.get(rnd.nextInt(uploads.size())));
+            };
+        }
+
+        private HttpRequest json(HttpRequest.Builder b, String path, String question) {
+            return b.uri(app.resolve(path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(chatRequest(question)))
+                    .build();
+        }
+
+        private HttpRequest multipart(HttpRequest.Builder b, String question, Upload upload) {
+            String boundary = "load-" + Long.toHexString(System.nanoTime());
+            var body = new ByteArrayOutputStream(upload.bytes().length + 1024);
+            body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"request\"\r\n"
+                    + "Content-Type: application/json\r\n\r\n" + chatRequest(question) + "\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\""
+                    + upload.name() + "\"\r\nContent-Type: " + upload.contentType() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(upload.bytes());
+            body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+            return b.uri(app.resolve("/api/chat/upload/completion"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                    .build();
+        }
+
+        private static String chatRequest(String question) {
+            return "{\"messages\":[{\"role\":\"user\",\"content\":\"" + question.replace("\"", "\\\"")
+                    + "\"}],\"maxTokens\":512}";
+        }
+
+        private static void gc(long[] into) {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                into[0] += Math.max(0, gc.getCollectionCount());
+                into[1] += Math.max(0, gc.getCollectionTime());
+            }
+        }
+
+        // ----------------------------
+        // reporting
+        // ----------------------------
+
+        void report(int seconds, AwsStub.Stats stub) throws InterruptedException {
+            System.out.printf(Locale.ROOT, "%n%-8s %9s %7s %8s %8s %8s %8s %8s  %s%n",
+                    "workload", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "statuses");
+            for (var w : Workload.values()) {
+                var of = samples.stream().filter(s -> s.workload() == w).toList();
+                if (!of.isEmpty()) row(w.name().toLowerCase(Locale.ROOT), of, seconds);
+            }
+            row("all", samples, seconds);
+
+            var heap = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            Thread.sleep(200);
+            System.gc();
+            long live = heap.getHeapMemoryUsage().getUsed();
+            long max = heap.getHeapMemoryUsage().getMax();
+            System.out.printf(Locale.ROOT, "%nheap: peak %d MB used, %d MB live after GC, max %s; "
+                            + "GC: %d collections, %d ms%n",
+                    mb(peakHeap), mb(live), max < 0 ? "unbounded" : mb(max) + " MB", gcCount, gcMillis);
+            System.out.printf(Locale.ROOT, "stub: %d converse, %d streams, %d OCR, %d pages, %d throttled, "
+                            + "max %d in flight%n",
+                    stub.converse(), stub.streams(), stub.ocr(), stub.pages(), stub.throttled(), stub.maxInFlight());
+        }
+
+        private static void row(String name, List<Sample> of, int seconds) {
+            long[] nanos = of.stream().mapToLong(Sample::nanos).sorted().toArray();
+            var statuses = new TreeMap<Integer, Integer>();
+            int errors = 0;
+            for (var s : of) {
+                statuses.merge(s.status(), 1, Integer::sum);
+                if (s.status() != 200) errors++;
+            }
+            System.out.printf(Locale.ROOT, "%-8s %9d %7d %8.1f %8.0f %8.0f %8.0f %8.0f  %s%n",
+                    name, of.size(), errors, (double) of.size() / seconds,
+                    millis(percentile(nanos, 0.50)), millis(percentile(nanos, 0.90)),
+                    millis(percentile(nanos, 0.99)), millis(nanos[nanos.length - 1]), statuses);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            int i = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+
+        private static long mb(long bytes) {
+            return bytes / (1024 * 1024);
+        }
+    }
+
+    // ----------------------------
+    // inputs
+    // ----------------------------
+
+    private static Map<Workload, Integer> parseMix(String spec) {
+        var mix = new EnumMap<Workload, Integer>(Workload.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("load.mix entry '" + part + "', expected name=weight");
+            mix.put(Workload.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+
+    /** {@code variants} distinct files of each kind: plain text, a text PDF, and a scanned (image-only) PDF. */
+    private static List<Upload> uploads(int variants, long seed) throws IOException {
+        var out = new ArrayList<Upload>();
+        for (int v = 0; v < Math.max(1, variants); v++) {
+            String prose = prose(24_000, seed + v);
+            out.add(new Upload("notes-" + v + ".txt", "text/plain", prose.getBytes(StandardCharsets.UTF_8)));
+            out.add(new Upload("report-" + v + ".pdf", "application/pdf", textPdf(prose, 6)));
+            out.add(new Upload("scan-" + v + ".pdf", "application/pdf", scannedPdf(seed + v)));
+        }
+        return out;
+    }
+
+    private static String prose(int chars, long seed) {
+        String[] words = {"revenue", "quarter", "region", "forecast", "growth", "margin", "customer", "order",
+                "the", "of", "and", "to", "in", "for", "with", "by", "was", "is"};
+        var rnd = new Random(seed);
+        var sb = new StringBuilder(chars + 64);
+        while (sb.length() < chars) {
+            int n = 8 + rnd.nextInt(12);
+            for (int i = 0; i < n; i++) sb.append(words[rnd.nextInt(words.length)]).append(i == n - 1 ? ". " : " ");
+            if (rnd.nextInt(6) == 0) sb.append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static byte[] textPdf(String text, int pages) throws IOException {
+        String[] lines = text.replace("\n", " ").split("(?<=\\G.{90})");
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            var font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            int perPage = Math.max(1, (int) Math.ceil((double) lines.length / pages));
+            for (int p = 0; p < pages; p++) {
+                var page = new PDPage();
+                doc.addPage(page);
+                try (var cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(font, 10);
+                    cs.setLeading(12);
+                    cs.newLineAtOffset(40, 750);
+                    for (int i = p * perPage; i < Math.min(lines.length, (p + 1) * perPage); i++) {
+                        cs.showText(lines[i]);
+                        cs.newLine();
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** One page holding only an image, so extraction takes the OCR path. */
+    private static byte[] scannedPdf(long seed) throws IOException {
+        var img = new BufferedImage(600, 800, BufferedImage.TYPE_BYTE_GRAY);
+        var rnd = new Random(seed);
+        var g = img.createGraphics();
+        g.fillRect(0, 0, 600, 800);
+        g.setColor(java.awt.Color.BLACK);
+        for (int y = 60; y < 760; y += 24) g.fillRect(50, y, 200 + rnd.nextInt(300), 8);
+        g.dispose();
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            var page = new PDPage();
+            doc.addPage(page);
+            try (var cs = new PDPageContentStream(doc, page)) {
+                cs.drawImage(LosslessFactory.createFromImage(doc, img), 0, 0, page.getMediaBox().getWidth(),
+                        page.getMediaBox().getHeight());
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) System.setProperty(key, value);
+    }
+}
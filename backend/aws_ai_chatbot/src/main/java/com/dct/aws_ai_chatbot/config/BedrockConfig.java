@@ -3,30 +3,56 @@ package com.dct.aws_ai_chatbot.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 
+import java.net.URI;
+
 @Configuration
 
 public class BedrockConfig {
     @Value("${app.bedrock.region}")
     private String region;
 
+    // Optional, e.g. http://localhost:8089 to run against a local Converse stub
+    @Value("${app.bedrock.endpoint:}")
+    private String endpoint;
+
+    // Every in-flight completion or stream holds one async connection; the SDK default is 50
+    @Value("${app.bedrock.async.max-concurrency:200}")
+    private int asyncMaxConcurrency;
+
+    // Both clients are lazy: created on first use, or before the SnapStart snapshot by StartupPrimer.
+    // SDK retries are off: BedrockAdmission retries throttles itself so they also shrink its concurrency limit.
     @Bean
+    @Lazy
     public BedrockRuntimeClient bedrockClient() {
-        return BedrockRuntimeClient.builder()
+        var builder = BedrockRuntimeClient.builder()
                 .region(Region.of(region))
                 .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry()));
+        if (!endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+        return builder.build();
     }
 
     @Bean
+    @Lazy
     public BedrockRuntimeAsyncClient bedrockAsyncClient() {
-        return BedrockRuntimeAsyncClient.builder()
+        var http = NettyNioAsyncHttpClient.builder().maxConcurrency(asyncMaxConcurrency);
+        // Bedrock speaks HTTP/2 over TLS; a plain-http local stub only understands HTTP/1.1
+        if (endpoint.startsWith("http://")) http.protocol(Protocol.HTTP1_1);
+        var builder = BedrockRuntimeAsyncClient.builder()
                 .region(Region.of(region))
                 .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry()))
+                .httpClientBuilder(http);
+        if (!endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+        return builder.build();
     }
 }
\ No newline at end of file
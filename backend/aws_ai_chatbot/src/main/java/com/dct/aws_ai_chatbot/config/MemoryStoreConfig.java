@@ -0,0 +1,54 @@
+package com.dct.aws_ai_chatbot.config;
+
+import com.dct.aws_ai_chatbot.service.LogThreadMemoryStore;
+import com.dct.aws_ai_chatbot.service.ThreadMemoryStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class MemoryStoreConfig {
+
+    // "log" = append-only log on local disk, "none" = heap only
+    @Value("${app.memory.store:log}")
+    private String store;
+
+    // Empty = <java.io.tmpdir>/thread-memory
+    @Value("${app.memory.log.dir:}")
+    private String dir;
+
+    @Value("${app.memory.log.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${app.memory.log.fsync:false}")
+    private boolean fsync;
+
+    @Value("${app.memory.log.retention-hours:168}")
+    private long retentionHours;
+
+    @Value("${app.memory.log.compact-interval-seconds:60}")
+    private long compactIntervalSeconds;
+
+    @Value("${app.memory.log.min-live-ratio:0.5}")
+    private double minLiveRatio;
+
+    // The log keeps what the heap tier would keep per thread
+    @Value("${app.memory.max-chars-per-thread:120000}")
+    private long maxCharsPerThread;
+
+    @Bean
+    public ThreadMemoryStore threadMemoryStore() throws IOException {
+        return switch (store) {
+            case "none" -> ThreadMemoryStore.NONE;
+            case "log" -> new LogThreadMemoryStore(
+                    dir.isBlank() ? Path.of(System.getProperty("java.io.tmpdir"), "thread-memory") : Path.of(dir),
+                    segmentBytes, fsync, maxCharsPerThread, Duration.ofHours(retentionHours),
+                    compactIntervalSeconds, minLiveRatio);
+            default -> throw new IllegalArgumentException("app.memory.store must be 'log' or 'none', not '" + store + "'");
+        };
+    }
+}
@@ -15,6 +15,7 @@ public class WebConfig {
                         .allowedOrigins("http://localhost:4200/")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("Server-Timing")
                         .allowCredentials(false)
                         .maxAge(3600);
             }
@@ -1,39 +1,79 @@
 package com.dct.aws_ai_chatbot.controller;
 
+import com.dct.aws_ai_chatbot.service.CompletionCache;
 import com.dct.aws_ai_chatbot.service.ContentExtractService;
+import com.dct.aws_ai_chatbot.service.ContextRetriever;
+import com.dct.aws_ai_chatbot.service.MainContent;
+import com.dct.aws_ai_chatbot.service.RequestStages;
+import com.dct.aws_ai_chatbot.service.StageTimings;
 import com.dct.aws_ai_chatbot.dto.ChatDtos.*;
 import com.dct.aws_ai_chatbot.service.ClaudeService;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
 import com.dct.aws_ai_chatbot.service.ThreadMemoryService;
 import com.dct.aws_ai_chatbot.service.WebFetchService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api/chat")
 // Optional: if you also configure CORS in API Gateway, this doesn't hurt.
 // If you need credentials, replace "*" with your exact origins and add allowCredentials in a global CORS config.
-@CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.POST, RequestMethod.OPTIONS})
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = StageTimings.HEADER,
+        methods = {RequestMethod.POST, RequestMethod.OPTIONS})
 public class ChatController {
 
+    private static final ContextSegment FILES_HEADING = ContextSegment.of(null, "--- FILES UPLOADED THIS TURN ---");
+    private static final ContextSegment LINKS_HEADING = ContextSegment.of(null, "--- LINKS FETCHED THIS TURN ---");
+    private static final ContextSegment RETRIEVED_HEADING = ContextSegment.of(null, "--- FROM EARLIER IN THIS THREAD ---");
+
     private final ClaudeService claude;
     private final ThreadMemoryService memory;
     private final WebFetchService web;
     private final ContentExtractService extractor;
+    private final ContextRetriever retriever;
+    private final CompletionCache completions;
+    private final RequestStages stages;
+    private final MeterRegistry registry;
+
+    @Value("${app.completion.timeout-ms:120000}")
+    private long completionTimeoutMs;
 
-    public ChatController(ClaudeService claude, ThreadMemoryService memory, WebFetchService web, ContentExtractService extractor) {
+    public ChatController(ClaudeService claude, ThreadMemoryService memory, WebFetchService web,
+                          ContentExtractService extractor, ContextRetriever retriever,
+                          CompletionCache completions, RequestStages stages, MeterRegistry registry) {
         this.claude = claude;
         this.memory = memory;
         this.web = web;
         this.extractor = extractor;
+        this.retriever = retriever;
+        this.completions = completions;
+        this.stages = stages;
+        this.registry = registry;
     }
 
     // ----------------------------
@@ -44,29 +84,22 @@ public class ChatController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public Map<String, Object> chatCompletion(
+    public DeferredResult<ResponseEntity<Map<String, Object>>> chatCompletion(
             @RequestBody @Valid ChatRequest req,
-            @RequestHeader(value = "X-Thread-Id", required = false) String threadId
+            @RequestHeader(value = "X-Thread-Id", required = false) String threadId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
     ) {
         if (req.messages() == null || req.messages().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "messages must not be empty");
         }
+        var timings = new StageTimings(registry, "completion");
 
-        // 1) Fetch links from the latest user message
-        var linkCtx = fetchLinksFromLastTurnAndMaybePersist(req, threadId);
-
-        // 2) Build messages + injected context (persisted + links)
-        var wrapped = wrapWithContext(req, threadId, null, linkCtx);
-
-        // 3) Single-shot completion (no SSE)
-        String text = claude.chatOnce(wrapped);
-
-        return Map.of(
-                "ok", true,
-                "text", text,
-                "tokensRequested", req.maxTokens(),
-                "threadId", threadId == null ? "" : threadId
-        );
+        // Duplicates (retries, double-clicks) share one run of the whole pipeline:
+        // 1) links from the latest user message and the memory read, concurrently, merged into the context;
+        // 2) single-shot completion (no SSE) on the async client
+        var key = CompletionCache.keyFor(idempotencyKey, threadId, req, List.of());
+        var answer = completions.getAsync(key, () -> prepareAndCall(req, threadId, null, timings));
+        return respond(answer, timings, req, threadId);
     }
 
     // ----------------------------
@@ -77,108 +110,329 @@ public class ChatController {
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public Map<String, Object> chatUploadCompletion(
+    public DeferredResult<ResponseEntity<Map<String, Object>>> chatUploadCompletion(
             @RequestPart("request") @Valid ChatRequest req,
             @RequestPart(value = "file", required = false) MultipartFile[] files,
+            @RequestHeader(value = "X-Thread-Id", required = false) String threadId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        if (req.messages() == null || req.messages().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "messages must not be empty");
+        }
+        var timings = new StageTimings(registry, "upload-completion");
+
+        // uploads are hashed here, on the request thread; the multipart parts stay until the async dispatch ends.
+        // 1) Uploads, links and the memory read, concurrently, merged into the context, then persisted;
+        // 2) single-shot completion (no SSE) on the async client
+        var key = CompletionCache.keyFor(idempotencyKey, threadId, req, uploadDigests(files));
+        var answer = completions.getAsync(key, () -> prepareAndCall(req, threadId, files, timings));
+        return respond(answer, timings, req, threadId);
+    }
+
+    // ----------------------------
+    // STREAMING COMPLETION (SSE)
+    // ----------------------------
+    @PostMapping(
+            path = "/stream",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    public ResponseEntity<SseEmitter> chatStream(
+            @RequestBody @Valid ChatRequest req,
             @RequestHeader(value = "X-Thread-Id", required = false) String threadId
     ) {
         if (req.messages() == null || req.messages().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "messages must not be empty");
         }
+        var timings = new StageTimings(registry, "stream");
 
-        // 1) Extract text from uploaded files and (optionally) persist to thread memory
-        var fileCtx = extractFilesAndMaybePersist(files, threadId);
+        var wrapped = prepare(req, threadId, null, timings);
 
-        // 2) Fetch links from the latest user message
-        var linkCtx = fetchLinksFromLastTurnAndMaybePersist(req, threadId);
+        var emitter = new SseEmitter(0L); // no timeout; Bedrock/the client decide when it ends
+        claude.chatStream(wrapped, emitter, threadId);
+        // headers go out before the first token; time to first token is in bedrock.stream.ttft
+        return ResponseEntity.ok().header(StageTimings.HEADER, timings.serverTiming()).body(emitter);
+    }
 
-        // 3) Build messages + injected context (persisted + files + links)
-        var wrapped = wrapWithContext(req, threadId, fileCtx, linkCtx);
+    // ----------------------------
+    // STREAMING COMPLETION WITH UPLOAD (SSE)
+    // ----------------------------
+    @PostMapping(
+            path = "/upload/stream",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    public ResponseEntity<SseEmitter> chatUploadStream(
+            @RequestPart("request") @Valid ChatRequest req,
+            @RequestPart(value = "file", required = false) MultipartFile[] files,
+            @RequestHeader(value = "X-Thread-Id", required = false) String threadId
+    ) {
+        if (req.messages() == null || req.messages().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "messages must not be empty");
+        }
+        var timings = new StageTimings(registry, "upload-stream");
 
-        // 4) Single-shot completion (no SSE)
-        String text = claude.chatOnce(wrapped);
+        var wrapped = prepare(req, threadId, files, timings);
 
-        return Map.of(
-                "ok", true,
-                "text", text,
-                "tokensRequested", req.maxTokens(),
-                "threadId", threadId == null ? "" : threadId
-        );
+        var emitter = new SseEmitter(0L);
+        claude.chatStream(wrapped, emitter, threadId);
+        return ResponseEntity.ok().header(StageTimings.HEADER, timings.serverTiming()).body(emitter);
     }
 
     // ----------------------------
     // UTILITIES
     // ----------------------------
 
-    private StringBuilder fetchLinksFromLastTurnAndMaybePersist(ChatRequest req, String threadId) {
-        var urlRe = Pattern.compile("(?i)(https?://\\S+|www\\.\\S+)");
-        var linkCtx = new StringBuilder();
+    /**
+     * Request preparation as a stage graph: extraction of the uploads, fetching of the links and the memory
+     * read start together under one deadline ({@code app.prepare.budget-ms}). Results merge in a fixed order
+     * (files in upload order, then links in message order); a late or failed stage degrades to a note or to
+     * no context. This turn's files and links are persisted after the memory read, so it never sees them.
+     */
+    private WrappedRequest prepare(ChatRequest req, String threadId, MultipartFile[] files, StageTimings timings) {
+        var graph = stages.begin(timings);
+        var uploads = nonEmpty(files);
+        var links = linksInLastTurn(req);
+
+        // PDFBox/POI/Textract, all files at once under one time budget, cached by content digest
+        var extracted = uploads.isEmpty() ? null
+                : graph.stage("extract", () -> extractor.extractAll(uploads), e -> notExtracted(uploads, e));
+        // All links in parallel under one deadline; anything still running is dropped
+        var fetched = links.isEmpty() ? null
+                : graph.stage("links", () -> web.fetchAll(links), e -> List.<WebFetchService.FetchResult>of());
+        var persisted = threadId == null || threadId.isBlank() ? null
+                : graph.stage("memory", () -> selectContext(req, threadId), e -> null);
+
+        var selection = persisted == null ? null : persisted.await();
+        var stable = selection == null || !selection.fullContext() ? null : selection.context();
+        var fileCtx = extracted == null ? null : mergeFilesAndMaybePersist(uploads, extracted.await(), threadId, stable);
+        var linkCtx = fetched == null ? null : mergeLinksAndMaybePersist(fetched.await(), threadId);
+        return timings.time("context", () -> wrap(req, selection, fileCtx, linkCtx));
+    }
+
+    private static List<MultipartFile> nonEmpty(MultipartFile[] files) {
+        var uploads = new ArrayList<MultipartFile>();
+        if (files != null) {
+            for (var f : files) {
+                if (f != null && !f.isEmpty()) uploads.add(f);
+            }
+        }
+        return uploads;
+    }
 
+    private static List<String> linksInLastTurn(ChatRequest req) {
+        var urlRe = Pattern.compile("(?i)(https?://\\S+|www\\.\\S+)");
         var last = req.messages().get(req.messages().size() - 1);
         var userText = last.content() == null ? "" : last.content();
         var m = urlRe.matcher(userText);
 
-        while (m.find()) {
-            String raw = m.group();
-            String text = web.fetchTextFromPossiblyBareUrl(raw);
+        var raws = new ArrayList<String>();
+        while (m.find()) raws.add(m.group());
+        return raws;
+    }
+
+    /** What the extract stage degrades to: one note per upload, so the model knows the file wasn't read. */
+    private static List<ContentExtractService.Extraction> notExtracted(List<MultipartFile> uploads, Throwable cause) {
+        var out = new ArrayList<ContentExtractService.Extraction>(uploads.size());
+        for (var f : uploads) {
+            String name = f.getOriginalFilename() == null ? "file" : f.getOriginalFilename();
+            out.add(new ContentExtractService.Extraction(null, cause instanceof TimeoutException
+                    ? "[extraction timed out for " + name + "]"
+                    : "[error extracting text: " + cause.getMessage() + "]"));
+        }
+        return out;
+    }
+
+    private List<ContextSegment> mergeLinksAndMaybePersist(List<WebFetchService.FetchResult> results, String threadId) {
+        var linkCtx = new ArrayList<ContextSegment>();
+        boolean persist = threadId != null && !threadId.isBlank();
+        // Paragraphs repeated across pages (site-wide notices, shared sidebars) go to the model once per thread.
+        // A page the thread already holds is pasted again: it isn't checked against its own earlier copy, and
+        // it isn't stored twice.
+        var seen = new HashSet<Long>();
+        var held = new HashSet<String>();
+        if (persist) {
+            var urls = new HashSet<String>();
+            for (var r : results) urls.add(r.raw());
+            for (var fp : memory.fingerprints(threadId)) {
+                if (urls.contains(fp.label())) {
+                    held.add(fp.label());
+                } else {
+                    for (long p : fp.paragraphs()) seen.add(p);
+                }
+            }
+        }
+        for (var r : results) {
+            // a failed fetch's note tells the model this turn that the page wasn't read; it isn't page text to keep
+            boolean ok = r.status() == WebFetchService.FetchStatus.OK;
+            String text = ok ? MainContent.dropRepeated(r.text(), seen) : r.text();
             if (text != null && !text.isBlank()) {
-                linkCtx.append("\n\n=== ").append(raw).append(" ===\n").append(text);
-                if (threadId != null && !threadId.isBlank()) {
-                    memory.append(threadId, raw, text);
+                linkCtx.add(ContextSegment.of(r.raw(), text));
+                if (persist && ok && !held.contains(r.raw())) {
+                    memory.append(threadId, r.raw(), text);
                 }
             }
         }
         return linkCtx;
     }
 
-    private StringBuilder extractFilesAndMaybePersist(MultipartFile[] files, String threadId) {
-        var fileCtx = new StringBuilder();
-        if (files != null) {
-            for (var f : files) {
-                if (f == null || f.isEmpty()) continue;
-                String name = (f.getOriginalFilename() == null ? "file" : f.getOriginalFilename());
-                String text = extractor.extractText(f); // PDFBox/POI/Textract (your service)
-                if (text != null && !text.isBlank()) {
-                    fileCtx.append("\n\n=== ").append(name).append(" ===\n").append(text);
+    private List<ContextSegment> mergeFilesAndMaybePersist(List<MultipartFile> uploads,
+                                                           List<ContentExtractService.Extraction> extractions,
+                                                           String threadId, List<ContextSegment> stable) {
+        var fileCtx = new ArrayList<ContextSegment>();
+        boolean persist = threadId != null && !threadId.isBlank();
+        for (int i = 0; i < uploads.size(); i++) {
+            var f = uploads.get(i);
+            String name = (f.getOriginalFilename() == null ? "file" : f.getOriginalFilename());
+            var extraction = extractions.get(i);
+            String text = extraction.text();
+            if (text != null && !text.isBlank()) {
+                // Persist file text only when thread id provided. Sticky files come back every turn;
+                // only persist content this thread hasn't seen, one segment per file so retrieval keeps the name.
+                // A file the thread already holds is left out only when this turn's stable context carries it whole.
+                if (!persist) {
+                    fileCtx.add(ContextSegment.of(name, text));
+                } else if (extraction.digest() == null) {
+                    fileCtx.add(ContextSegment.of(name, text));
+                    memory.append(threadId, name, text);
+                } else if (memory.appendOnce(threadId, extraction.digest(), name, text)
+                        || !carriesWhole(stable, memory.renderedBlock(threadId, extraction.digest()))) {
+                    fileCtx.add(ContextSegment.of(name, text));
                 }
             }
         }
-        // Persist file text only when thread id provided
-        if (fileCtx.length() > 0 && threadId != null && !threadId.isBlank()) {
-            memory.append(threadId, "uploaded-files", fileCtx.toString());
-        }
         return fileCtx;
     }
 
-    private ChatRequest wrapWithContext(
-            ChatRequest req,
-            String threadId,
-            StringBuilder fileCtx,
-            StringBuilder linkCtx
-    ) {
-        var msgs = new ArrayList<>(req.messages());
-        var ctxBuilder = new StringBuilder();
-
-        // Persisted memory snapshot if threadId specified
-        if (threadId != null && !threadId.isBlank()) {
-            var mem = memory.snapshot(threadId);
-            if (mem != null && !mem.isBlank()) {
-                ctxBuilder.append("\n\n--- PERSISTED CONTEXT ---\n").append(mem);
+    /** True when the stable context carries the held upload's own block, not a retrieved chunk of it. */
+    private static boolean carriesWhole(List<ContextSegment> stable, ContextSegment held) {
+        if (stable == null || held == null) return false;
+        for (var block : stable) {
+            if (block == held) return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@link #prepare} on the stage pool, then the Bedrock call; the request thread returns right away.
+     * Cancelling the answer reaches the Bedrock call once it started (a composed stage wouldn't pass it on),
+     * and skips it when preparation is still running.
+     */
+    private CompletableFuture<String> prepareAndCall(ChatRequest req, String threadId, MultipartFile[] files,
+                                                     StageTimings timings) {
+        var answer = new CompletableFuture<String>();
+        stages.async(() -> prepare(req, threadId, files, timings)).whenComplete((wrapped, ex) -> {
+            if (ex != null) {
+                answer.completeExceptionally(ex);
+                return;
+            }
+            if (answer.isDone()) return; // cancelled while preparing
+            var call = timedBedrock(timings, claude.chatOnceAsync(wrapped, threadId));
+            answer.whenComplete((text, e) -> {
+                if (answer.isCancelled()) call.cancel(true);
+            });
+            call.whenComplete((text, e) -> {
+                if (e == null) answer.complete(text);
+                else answer.completeExceptionally(e);
+            });
+        });
+        return answer;
+    }
+
+    private static CompletableFuture<String> timedBedrock(StageTimings timings, CompletableFuture<String> call) {
+        long t0 = System.nanoTime();
+        call.whenComplete((text, ex) -> timings.record("bedrock", System.nanoTime() - t0));
+        return call;
+    }
+
+    /**
+     * Completes the response when the answer arrives; the request thread is already back in the pool.
+     * Past {@code app.completion.timeout-ms} (preparation included), or when the client goes away, this
+     * request stops waiting (and the Bedrock call is cancelled unless a coalesced duplicate still wants it).
+     */
+    private DeferredResult<ResponseEntity<Map<String, Object>>> respond(
+            CompletableFuture<String> answer, StageTimings timings, ChatRequest req, String threadId) {
+        var result = new DeferredResult<ResponseEntity<Map<String, Object>>>();
+        result.onError(e -> answer.cancel(true));
+        result.onTimeout(() -> answer.cancel(true));
+
+        answer.orTimeout(completionTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((text, ex) -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause == null) {
+                result.setResult(ResponseEntity.ok()
+                        .header(StageTimings.HEADER, timings.serverTiming())
+                        .body(Map.of(
+                                "ok", true,
+                                "text", text,
+                                "tokensRequested", req.maxTokens(),
+                                "threadId", threadId == null ? "" : threadId
+                        )));
+            } else if (cause instanceof TimeoutException) {
+                result.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .header(StageTimings.HEADER, timings.serverTiming())
+                        .body(Map.of(
+                                "ok", false,
+                                "error", "completion timed out after " + completionTimeoutMs + " ms",
+                                "threadId", threadId == null ? "" : threadId
+                        )));
+            } else if (!(cause instanceof CancellationException)) {
+                result.setErrorResult(cause);
             }
+        });
+        return result;
+    }
+
+    /** Name + SHA-256 of each upload, streamed so the bytes aren't buffered twice. */
+    private static List<String> uploadDigests(MultipartFile[] files) {
+        var out = new ArrayList<String>();
+        if (files == null) return out;
+        try {
+            var buf = new byte[8192];
+            for (var f : files) {
+                if (f == null || f.isEmpty()) continue;
+                var md = MessageDigest.getInstance("SHA-256");
+                try (InputStream in = f.getInputStream()) {
+                    for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+                }
+                out.add(f.getOriginalFilename() + ":" + HexFormat.of().formatHex(md.digest()));
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unreadable upload", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
-        if (fileCtx != null && fileCtx.length() > 0) {
-            ctxBuilder.append("\n\n--- FILES UPLOADED THIS TURN ---").append(fileCtx);
+        return out;
+    }
+
+    /**
+     * Persisted memory for this turn: all of it while it fits the retrieval budget, else only the chunks
+     * relevant to the latest message.
+     */
+    private ContextRetriever.Selection selectContext(ChatRequest req, String threadId) {
+        if (threadId == null || threadId.isBlank()) return null;
+        return retriever.select(threadId, lastUserText(req));
+    }
+
+    private WrappedRequest wrap(ChatRequest req, ContextRetriever.Selection selection,
+                                List<ContextSegment> fileCtx, List<ContextSegment> linkCtx) {
+        // Stable part: the full memory is the same whatever the question, so it goes ahead of the history
+        // where Bedrock can cache it. Retrieved chunks change with the question and would break that prefix.
+        List<ContextSegment> stable = null;
+        // Per-turn part: attached to the latest user message, after the cacheable prefix.
+        var turnCtx = new ArrayList<ContextSegment>();
+        if (selection != null && selection.fullContext()) {
+            stable = selection.context();
+        } else if (selection != null && !selection.context().isEmpty()) {
+            turnCtx.add(RETRIEVED_HEADING);
+            turnCtx.addAll(selection.context());
         }
-        if (linkCtx != null && linkCtx.length() > 0) {
-            ctxBuilder.append("\n\n--- LINKS FETCHED THIS TURN ---").append(linkCtx);
+        if (fileCtx != null && !fileCtx.isEmpty()) {
+            turnCtx.add(FILES_HEADING);
+            turnCtx.addAll(fileCtx);
         }
-
-        if (ctxBuilder.length() > 0) {
-            msgs.add(0, new com.dct.aws_ai_chatbot.dto.ChatDtos.Message(
-                    "user",
-                    "Use ONLY the following context unless the user asks otherwise:\n" +
-                            "====================\n" + ctxBuilder + "\n===================="
-            ));
+        if (linkCtx != null && !linkCtx.isEmpty()) {
+            turnCtx.add(LINKS_HEADING);
+            turnCtx.addAll(linkCtx);
         }
 
         // Anti-refusal nudge so the model uses provided context
@@ -187,21 +441,48 @@ public class ChatController {
                         "You are offline. Do NOT say you cannot access the internet. " +
                         "Any page or file content is already provided in the conversation context. Use it.";
 
-        return new ChatRequest(
-                msgs,
-                effectiveSystem,
-                req.maxTokens(),
-                req.temperature(),
-                req.topP()
+        return new WrappedRequest(
+                new ChatRequest(
+                        req.messages(),
+                        effectiveSystem,
+                        req.maxTokens(),
+                        req.temperature(),
+                        req.topP()
+                ),
+                stable,
+                turnCtx
         );
     }
 
+    private static String lastUserText(ChatRequest req) {
+        for (int i = req.messages().size() - 1; i >= 0; i--) {
+            var m = req.messages().get(i);
+            if ("user".equalsIgnoreCase(m.role()) && m.content() != null) return m.content();
+        }
+        return "";
+    }
+
     // ----------------------------
     // HOUSEKEEPING
     // ----------------------------
     @DeleteMapping("/memory")
     public void clearThreadMemory(@RequestHeader("X-Thread-Id") String threadId) {
         memory.clear(threadId);
+        retriever.forget(threadId);
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return Map.of(
+                "extractionCache", extractor.cacheStats(),
+                "webPageCache", web.cacheStats(),
+                "threadMemory", memory.stats(),
+                "bedrockUsage", claude.usageStats(),
+                "promptBudget", claude.budgetStats(),
+                "bedrockAdmission", claude.admissionStats(),
+                "modelRouting", claude.routingStats(),
+                "completionCache", completions.stats()
+        );
     }
 
     @GetMapping("/ping")
@@ -211,6 +492,6 @@ public class ChatController {
 
     // Helpful for browser preflight if you want the app itself to respond to OPTIONS.
     // (API Gateway can/should handle OPTIONS too; leaving this in is harmless.)
-    @RequestMapping(path = {"/completion", "/upload/completion"}, method = RequestMethod.OPTIONS)
+    @RequestMapping(path = {"/completion", "/upload/completion", "/stream", "/upload/stream"}, method = RequestMethod.OPTIONS)
     public void options() { /* no-op */ }
 }
@@ -19,4 +19,41 @@ public class ChatDtos {
     ) {}
 
     public record ChatResponse(String text) {}
-}
\ No newline at end of file
+
+    /**
+     * One labelled block of context, rendered once as {@code "=== label ===\n" + text} (just the text when the
+     * label is null) and sent as its own Converse content block. Lists of these are immutable and shared across
+     * turns, so a turn never copies the thread's memory into one big string.
+     */
+    public record ContextSegment(String label, String block) {
+        private static final String OPEN = "=== ";
+        private static final String CLOSE = " ===\n";
+
+        public static ContextSegment of(String label, String text) {
+            return new ContextSegment(label, label == null ? text : OPEN + label + CLOSE + text);
+        }
+
+        /** Length of {@code of(label, text).block()}, without building it. */
+        public static int blockLength(String label, String text) {
+            return label == null ? text.length() : OPEN.length() + label.length() + CLOSE.length() + text.length();
+        }
+    }
+
+    /**
+     * Request after server-side context assembly.
+     * {@code stableContext} (the thread's whole persisted memory) is sent first and is byte-identical across
+     * turns while memory is unchanged, so Bedrock can cache it; {@code turnContext} (files/links fetched this
+     * turn, memory chunks retrieved for this question) rides along with the latest user message.
+     * Null context lists are empty.
+     */
+    public record WrappedRequest(
+            ChatRequest request,
+            List<ContextSegment> stableContext,
+            List<ContextSegment> turnContext
+    ) {
+        public WrappedRequest {
+            stableContext = stableContext == null ? List.of() : List.copyOf(stableContext);
+            turnContext = turnContext == null ? List.of() : List.copyOf(turnContext);
+        }
+    }
+}
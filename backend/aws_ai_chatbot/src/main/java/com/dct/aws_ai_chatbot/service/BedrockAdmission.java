@@ -0,0 +1,255 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control in front of Bedrock.
+ * <ul>
+ *   <li>Adaptive limit (AIMD): each successful call that ran with the limit fully used adds {@code 1/limit};
+ *       each throttle multiplies it by {@code backoff-ratio}. Latency is not a signal: generation time depends
+ *       on output length, not load.</li>
+ *   <li>Fair queueing: calls over the limit wait in one FIFO per thread id, served round-robin, so a thread
+ *       with many calls queued can't starve the others. Beyond {@code max-queue} calls are rejected.</li>
+ *   <li>Retry policy: throttles, 5xx and I/O failures are retried up to {@code max-attempts} with full-jitter
+ *       exponential backoff; each retry goes back through the queue.</li>
+ * </ul>
+ */
+@Component
+public class BedrockAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(BedrockAdmission.class);
+
+    public record Stats(int limit, int inFlight, int queued, long throttled, long rejected, long retries) {}
+
+    /**
+     * How a call that held a permit ended; only throttles and busy successes move the limit.
+     * {@code REJECTED} is a 4xx other than a throttle: the request was bad, not the service.
+     */
+    public enum Outcome { OK, THROTTLED, ERROR, REJECTED, CANCELLED }
+
+    /** One admitted call; release exactly once when the call ends (later releases are ignored). */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) BedrockAdmission.this.release(outcome);
+        }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final int maxQueue;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    // guarded by "this"
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private final LinkedHashMap<String, ArrayDeque<CompletableFuture<Permit>>> queues = new LinkedHashMap<>();
+    private long throttled;
+    private long rejected;
+    private long retries;
+
+    private final Timer waitTimer;
+    private final MeterRegistry registry;
+
+    // runs retry backoffs; tasks only hand off (the next attempt queues for a permit), so one thread is enough
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "bedrock-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BedrockAdmission(
+            MeterRegistry registry,
+            @Value("${app.bedrock.admission.initial-limit:16}") int initialLimit,
+            @Value("${app.bedrock.admission.min-limit:2}") int minLimit,
+            @Value("${app.bedrock.admission.max-limit:128}") int maxLimit,
+            @Value("${app.bedrock.admission.backoff-ratio:0.7}") double backoffRatio,
+            @Value("${app.bedrock.admission.max-queue:500}") int maxQueue,
+            @Value("${app.bedrock.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.bedrock.retry.base-delay-ms:250}") long baseDelayMillis,
+            @Value("${app.bedrock.retry.max-delay-ms:4000}") long maxDelayMillis
+    ) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.maxQueue = maxQueue;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.registry = registry;
+
+        Gauge.builder("bedrock.admission.limit", this, a -> a.stats().limit())
+                .description("Current adaptive concurrency limit for Bedrock calls")
+                .register(registry);
+        Gauge.builder("bedrock.admission.in.flight", this, a -> a.stats().inFlight())
+                .description("Bedrock calls holding a permit")
+                .register(registry);
+        Gauge.builder("bedrock.admission.queued", this, a -> a.stats().queued())
+                .description("Bedrock calls waiting for a permit")
+                .register(registry);
+        waitTimer = Timer.builder("bedrock.admission.wait")
+                .description("Time a Bedrock call waited in the admission queue")
+                .register(registry);
+    }
+
+    /**
+     * A permit for one call on behalf of {@code threadId} (null/blank share one queue). Completes immediately
+     * under the limit; otherwise when this thread's turn comes. Fails with {@link RejectedExecutionException}
+     * when the queue is full. Cancelling the future leaves the queue.
+     */
+    public CompletableFuture<Permit> acquire(String threadId) {
+        String key = threadId == null ? "" : threadId.strip();
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            if (queued >= maxQueue) {
+                rejected++;
+                Counter.builder("bedrock.admission.rejected")
+                        .description("Bedrock calls rejected because the admission queue was full")
+                        .register(registry)
+                        .increment();
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "Bedrock is overloaded: " + queued + " calls already queued"));
+            }
+            waiter = new CompletableFuture<>();
+            queues.computeIfAbsent(key, k -> new ArrayDeque<>()).add(waiter);
+            queued++;
+        }
+        long t0 = System.nanoTime();
+        waiter.whenComplete((p, ex) -> {
+            if (waiter.isCancelled()) leave(key, waiter);
+            else waitTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        });
+        return waiter;
+    }
+
+    /**
+     * Backoff before the next attempt of a call that failed with {@code cause} on attempt {@code attempt}
+     * (1-based), or -1 when it should not be retried.
+     */
+    public long retryDelayMillis(int attempt, Throwable cause) {
+        String reason = retryReason(cause);
+        if (reason == null || attempt >= maxAttempts) return -1;
+        synchronized (this) {
+            retries++;
+        }
+        Counter.builder("bedrock.retries")
+                .description("Bedrock calls retried after a transient failure")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1); // full jitter
+    }
+
+    /** Runs {@code nextAttempt} after {@code delayMillis} (from {@link #retryDelayMillis}). */
+    public void retryLater(long delayMillis, Runnable nextAttempt) {
+        retryTimer.schedule(nextAttempt, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryTimer.shutdownNow();
+    }
+
+    public static Outcome outcomeOf(Throwable cause) {
+        if (isThrottle(cause)) return Outcome.THROTTLED;
+        if (cause instanceof SdkServiceException s && s.statusCode() >= 400 && s.statusCode() < 500) {
+            return Outcome.REJECTED;
+        }
+        return Outcome.ERROR;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats((int) limit, inFlight, queued, throttled, rejected, retries);
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private static boolean isThrottle(Throwable t) {
+        return t instanceof SdkServiceException s && (s.isThrottlingException() || s.statusCode() == 429);
+    }
+
+    private static String retryReason(Throwable t) {
+        if (isThrottle(t)) return "throttled";
+        if (t instanceof SdkServiceException s && s.statusCode() >= 500) return "server";
+        if (t instanceof SdkClientException && t.getCause() instanceof IOException) return "io";
+        return null;
+    }
+
+    private void release(Outcome outcome) {
+        var admitted = new ArrayList<CompletableFuture<Permit>>();
+        synchronized (this) {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            if (outcome == Outcome.THROTTLED) {
+                throttled++;
+                double before = limit;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                if ((int) before != (int) limit) log.info("Bedrock throttled: concurrency limit {} -> {}", (int) before, (int) limit);
+            } else if (outcome == Outcome.OK && saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            while (queued > 0 && inFlight < (int) limit) {
+                admitted.add(nextWaiter());
+                inFlight++;
+            }
+        }
+        for (var w : admitted) {
+            // cancelled after it was picked: hand the slot straight back
+            if (!w.complete(new Permit())) release(Outcome.CANCELLED);
+        }
+    }
+
+    /** Round-robin: head of the first thread's queue, then that thread moves to the back. */
+    private CompletableFuture<Permit> nextWaiter() {
+        var it = queues.entrySet().iterator();
+        var e = it.next();
+        it.remove();
+        var w = e.getValue().poll();
+        if (!e.getValue().isEmpty()) queues.put(e.getKey(), e.getValue());
+        queued--;
+        return w;
+    }
+
+    private synchronized void leave(String key, CompletableFuture<Permit> waiter) {
+        var q = queues.get(key);
+        if (q != null && q.remove(waiter)) {
+            queued--;
+            if (q.isEmpty()) queues.remove(key);
+        }
+    }
+}
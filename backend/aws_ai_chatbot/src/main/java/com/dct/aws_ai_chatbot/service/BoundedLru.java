@@ -0,0 +1,86 @@
+package com.dct.aws_ai_chatbot.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The LRU behind the extraction, web page and completion caches: bounded by entry count and by a total weight
+ * (chars, bytes), with an optional TTL. A value heavier than the whole bound is not stored, and a put never
+ * evicts its own key. Thread-safe; every operation takes this object's lock.
+ */
+final class BoundedLru<V> {
+
+    private record Node<V>(V value, long expiresAtMillis) {}
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToLongFunction<V> weigher;
+
+    // access-ordered => iteration starts at the least recently used entry; guarded by "this"
+    private final LinkedHashMap<String, Node<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    private long evictions;
+
+    /** {@code ttlMillis < 0}: entries don't expire (the caller tracks freshness itself). */
+    BoundedLru(int maxEntries, long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    /** The live value for {@code key}, or null; an expired entry is dropped. */
+    synchronized V get(String key) {
+        var n = map.get(key);
+        if (n == null) return null;
+        if (n.expiresAtMillis() < System.currentTimeMillis()) {
+            map.remove(key);
+            weight -= weigher.applyAsLong(n.value());
+            return null;
+        }
+        return n.value();
+    }
+
+    synchronized void put(String key, V value) {
+        long w = weigher.applyAsLong(value);
+        if (w > maxWeight) return; // would evict everything else; not worth keeping
+        long expires = ttlMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+        var prev = map.put(key, new Node<>(value, expires));
+        if (prev != null) weight -= weigher.applyAsLong(prev.value());
+        weight += w;
+
+        Iterator<Map.Entry<String, Node<V>>> it = map.entrySet().iterator();
+        while ((map.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            var eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            weight -= weigher.applyAsLong(eldest.getValue().value());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void remove(String key) {
+        var prev = map.remove(key);
+        if (prev != null) weight -= weigher.applyAsLong(prev.value());
+    }
+
+    synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+}
@@ -1,12 +1,22 @@
 package com.dct.aws_ai_chatbot.service;
 
 import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
 import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointType;
 import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
 import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
 import software.amazon.awssdk.services.bedrockruntime.model.SystemContentBlock;
@@ -14,140 +24,542 @@ import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamReques
 import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamResponseHandler;
 import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
 import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
 
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class ClaudeService {
 
+    /** Cumulative Converse token usage, including prompt-cache reads/writes. */
+    public record UsageStats(long calls, long inputTokens, long outputTokens,
+                             long cacheReadInputTokens, long cacheWriteInputTokens) {}
+
+    /** Prefix of the text returned by {@link #chatOnce} when the call failed. */
+    public static final String ERROR_PREFIX = "[Bedrock error] ";
+
+    private static final String CONTEXT_PREAMBLE =
+            "Use ONLY the following context unless the user asks otherwise:\n====================";
+    private static final String PERSISTED_PREAMBLE = CONTEXT_PREAMBLE + "\n--- PERSISTED CONTEXT ---";
+    // after the persisted block the instruction has already been given once
+    private static final String TURN_HEADER = "====================\n--- CONTEXT FOR THIS MESSAGE ---";
+    private static final String CONTEXT_CLOSE = "====================";
+    private static final int MAX_CACHE_POINTS = 4; // Converse limit per request
+
+    /** Bedrock-ready pieces shared by the sync and streaming paths. */
+    record Prompt(List<SystemContentBlock> system,
+                   List<software.amazon.awssdk.services.bedrockruntime.model.Message> messages) {}
+
     private final BedrockRuntimeClient sync;
     private final BedrockRuntimeAsyncClient async;
+    private final PromptBudgetPlanner planner;
+    private final BedrockAdmission admission;
+    private final ModelRouter router;
+    private final MeterRegistry registry;
+
+    @Value("${app.stream.flush-chars:64}")
+    private int flushChars;
+
+    @Value("${app.stream.flush-ms:50}")
+    private long flushMillis;
+
+    @Value("${app.bedrock.prompt-cache.enabled:true}")
+    private boolean promptCache;
 
-    @Value("${app.bedrock.model-id}")
-    private String modelId;
+    // Bedrock ignores checkpoints on prefixes shorter than the model minimum, so don't bother placing them
+    @Value("${app.bedrock.prompt-cache.min-tokens:1024}")
+    private int cacheMinTokens;
 
-    public ClaudeService(BedrockRuntimeClient client, BedrockRuntimeAsyncClient asyncClient) {
+    // fires time-based SSE flushes when deltas trickle in slower than flush-chars
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "sse-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    // SSE writes to clients: a slow client blocks one of these, never a Netty event loop
+    private final ExecutorService sseWriter = Executors.newCachedThreadPool(r -> {
+        var t = new Thread(r, "sse-write");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong inputTokens = new AtomicLong();
+    private final AtomicLong outputTokens = new AtomicLong();
+    private final AtomicLong cacheReadTokens = new AtomicLong();
+    private final AtomicLong cacheWriteTokens = new AtomicLong();
+
+    // lazy proxies: the clients are built on the first call rather than at startup
+    public ClaudeService(@Lazy BedrockRuntimeClient client, @Lazy BedrockRuntimeAsyncClient asyncClient,
+                         PromptBudgetPlanner planner, BedrockAdmission admission, ModelRouter router,
+                         MeterRegistry registry) {
         this.sync = client;
         this.async = asyncClient;
+        this.planner = planner;
+        this.admission = admission;
+        this.router = router;
+        this.registry = registry;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flushTimer.shutdownNow();
+        sseWriter.shutdownNow();
     }
 
     public String chatOnce(ChatRequest req) {
-        var messages = toBedrockMessages(req);
+        return chatOnce(new WrappedRequest(req, null, null));
+    }
+
+    public String chatOnce(WrappedRequest wrapped) {
+        var routed = converseRequest(wrapped);
+        for (int attempt = 1; ; attempt++) {
+            BedrockAdmission.Permit permit;
+            var admitted = admission.acquire(null);
+            try {
+                permit = admitted.get();
+            } catch (ExecutionException e) {
+                return ERROR_PREFIX + e.getCause().getMessage();
+            } catch (InterruptedException e) {
+                // leave the queue; a permit granted in the meantime goes straight back
+                if (!admitted.cancel(true)) admitted.thenAccept(p -> p.release(BedrockAdmission.Outcome.CANCELLED));
+                Thread.currentThread().interrupt();
+                return ERROR_PREFIX + "interrupted";
+            }
+
+            String model = router.pick(routed.route());
+            long t0 = System.nanoTime();
+            try {
+                ConverseResponse resp = sync.converse(routed.request().toBuilder().modelId(model).build());
+                permit.release(BedrockAdmission.Outcome.OK);
+                router.record(model, BedrockAdmission.Outcome.OK, -1);
+                recordCall("once", "ok", System.nanoTime() - t0);
+                return textOf(resp);
+            } catch (Exception e) {
+                permit.release(BedrockAdmission.outcomeOf(e));
+                router.record(model, BedrockAdmission.outcomeOf(e), -1);
+                long delay = admission.retryDelayMillis(attempt, e);
+                if (delay < 0) {
+                    recordCall("once", "error", System.nanoTime() - t0);
+                    // Keep it simple and safe for your controller
+                    return ERROR_PREFIX + e.getMessage();
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return ERROR_PREFIX + e.getMessage();
+                }
+            }
+        }
+    }
+
+    public CompletableFuture<String> chatOnceAsync(WrappedRequest wrapped) {
+        return chatOnceAsync(wrapped, null);
+    }
+
+    /**
+     * Non-blocking {@link #chatOnce} on the async client: no request thread waits for the generation.
+     * Admission is queued per {@code threadId}; transient failures are retried with backoff. Failures
+     * complete with {@link #ERROR_PREFIX} text like the sync path; cancelling the returned future leaves
+     * the queue or aborts the Bedrock call in progress.
+     */
+    public CompletableFuture<String> chatOnceAsync(WrappedRequest wrapped, String threadId) {
+        var routed = converseRequest(wrapped);
+        var result = new CompletableFuture<String>();
+        var current = new AtomicReference<Future<?>>(); // the queued permit or the call in progress
+        result.whenComplete((text, ex) -> {
+            var f = current.get();
+            if (ex instanceof CancellationException && f != null) f.cancel(true);
+        });
+        attemptOnce(routed, threadId, 1, result, current);
+        return result;
+    }
+
+    private void attemptOnce(Routed<ConverseRequest> routed, String threadId, int attempt,
+                             CompletableFuture<String> result, AtomicReference<Future<?>> current) {
+        var permitted = admission.acquire(threadId);
+        current.set(permitted);
+        if (result.isDone()) permitted.cancel(true);
+
+        permitted.whenComplete((permit, denied) -> {
+            if (denied != null) {
+                result.complete(ERROR_PREFIX + unwrap(denied).getMessage());
+                return;
+            }
+            if (result.isDone()) {
+                permit.release(BedrockAdmission.Outcome.CANCELLED);
+                return;
+            }
+            String model = router.pick(routed.route());
+            long t0 = System.nanoTime();
+            CompletableFuture<ConverseResponse> call = async.converse(routed.request().toBuilder().modelId(model).build());
+            current.set(call);
+            if (result.isDone()) call.cancel(true);
+
+            call.whenComplete((resp, ex) -> {
+                if (ex == null) {
+                    permit.release(BedrockAdmission.Outcome.OK);
+                    router.record(model, BedrockAdmission.Outcome.OK, -1);
+                    recordCall("once", "ok", System.nanoTime() - t0);
+                    result.complete(textOf(resp));
+                    return;
+                }
+                Throwable cause = unwrap(ex);
+                if (cause instanceof CancellationException) {
+                    permit.release(BedrockAdmission.Outcome.CANCELLED);
+                    recordCall("once", "cancelled", System.nanoTime() - t0);
+                    return;
+                }
+                permit.release(BedrockAdmission.outcomeOf(cause));
+                router.record(model, BedrockAdmission.outcomeOf(cause), -1);
+                long delay = result.isDone() ? -1 : admission.retryDelayMillis(attempt, cause);
+                if (delay < 0) {
+                    recordCall("once", "error", System.nanoTime() - t0);
+                    result.complete(ERROR_PREFIX + cause.getMessage());
+                } else {
+                    admission.retryLater(delay, () -> attemptOnce(routed, threadId, attempt + 1, result, current));
+                }
+            });
+        });
+    }
+
+    /** A request without its model, and the tier each attempt picks a model from. */
+    private record Routed<R>(R request, ModelRouter.Route route) {}
 
-        // Build Converse (sync) request
+    /** Budget planning plus the Converse request shared by {@link #chatOnce} and {@link #chatOnceAsync}. */
+    private Routed<ConverseRequest> converseRequest(WrappedRequest wrapped) {
+        var plan = planner.plan(wrapped); // fit the input budget before anything is built
+        wrapped = plan.request();
+        var req = wrapped.request();
+        var prompt = toPrompt(wrapped);
+
+        // Build Converse request; the model is set per attempt
         ConverseRequest.Builder builder = ConverseRequest.builder()
-                .modelId(modelId)
-                .messages(messages)
+                .messages(prompt.messages())
                 .inferenceConfig(cfg -> {
                     cfg.maxTokens(req.maxTokens() != null ? req.maxTokens() : 4000);
                     if (req.temperature() != null) cfg.temperature(req.temperature().floatValue());
                     if (req.topP() != null)        cfg.topP(req.topP().floatValue());
                 });
 
-        if (req.system() != null && !req.system().isBlank()) {
-            builder.system(java.util.List.of(SystemContentBlock.fromText(req.system())));
+        if (!prompt.system().isEmpty()) {
+            builder.system(prompt.system());
         }
+        return new Routed<>(builder.build(), router.classify(plan));
+    }
 
-        try {
-            ConverseResponse resp = sync.converse(builder.build());
+    /** Records usage and returns the assistant text from the output message content blocks. */
+    private String textOf(ConverseResponse resp) {
+        recordUsage(resp.usage(), "once");
+        if (resp.metrics() != null) recordServerLatency(resp.metrics().latencyMs(), "once");
 
-            // Extract assistant text from output message content blocks
-            if (resp.output() != null &&
-                    resp.output().message() != null &&
-                    resp.output().message().content() != null) {
+        if (resp.output() != null &&
+                resp.output().message() != null &&
+                resp.output().message().content() != null) {
 
-                StringBuilder sb = new StringBuilder();
-                for (ContentBlock b : resp.output().message().content()) {
-                    String t = b.text();
-                    if (t != null && !t.isEmpty()) sb.append(t);
-                }
-                return sb.toString();
+            StringBuilder sb = new StringBuilder();
+            for (ContentBlock b : resp.output().message().content()) {
+                String t = b.text();
+                if (t != null && !t.isEmpty()) sb.append(t);
             }
-            return "";
-        } catch (Exception e) {
-            // Keep it simple and safe for your controller
-            return "[Bedrock error] " + e.getMessage();
+            return sb.toString();
         }
+        return "";
     }
 
-
-    /** Streaming chat: writes tokens to SseEmitter as they arrive. */
     public void chatStream(ChatRequest req, SseEmitter emitter) {
-        // Turn the app’s ChatRequest into Bedrock’s message format
-        var messages = toBedrockMessages(req);
+        chatStream(new WrappedRequest(req, null, null), emitter);
+    }
+
+    public void chatStream(WrappedRequest wrapped, SseEmitter emitter) {
+        chatStream(wrapped, emitter, null);
+    }
+
+    /**
+     * Streaming chat: relays tokens to the SseEmitter in small batches as they arrive.
+     * Cancelling happens from the emitter side: if the client goes away the Bedrock stream is cancelled.
+     * Admission is queued per {@code threadId}; a transient failure before the first token is retried.
+     */
+    public void chatStream(WrappedRequest wrapped, SseEmitter emitter, String threadId) {
+        var plan = planner.plan(wrapped); // fit the input budget before anything is built
+        wrapped = plan.request();
+        var req = wrapped.request();
+        // Turn the app’s request into Bedrock’s message format
+        var prompt = toPrompt(wrapped);
 
-        // Builds a Bedrock streaming request with model + inference params.
-        var request = ConverseStreamRequest.builder()
-                .modelId(modelId)
-                .messages(messages)
+        // Builds a Bedrock streaming request with inference params; the model is set per attempt.
+        var builder = ConverseStreamRequest.builder()
+                .messages(prompt.messages())
                 .inferenceConfig(cfg -> {
                     cfg.maxTokens(req.maxTokens() != null ? req.maxTokens() : 4000);
                     if (req.temperature() != null) cfg.temperature(req.temperature().floatValue());
                     if (req.topP() != null) cfg.topP(req.topP().floatValue());
-                })
-                .build();
-
-        // Handle streaming callbacks from Bedrock.
-        var handler = ConverseStreamResponseHandler.builder()
-                .subscriber(ConverseStreamResponseHandler.Visitor.builder()
-                        .onContentBlockDelta(delta -> {
-                            // Anthropic text deltas arrive here; stream them out as SSE "data: ..."
-                            String chunk = delta.delta().text();
-                            if (chunk != null && !chunk.isEmpty()) {
-                                try { emitter.send(SseEmitter.event().data(chunk).reconnectTime(0)); }
-                                catch (IOException ignored) {}
-                            }
-                        })
-                        .onMessageStop(stop -> {
-                            try { emitter.send(SseEmitter.event().name("done").data("[DONE]")); }
-                            catch (IOException ignored) {}
-                            emitter.complete();
-                        })
-                        .build())
-                        .onError(ex -> {
-                            emitter.completeWithError(ex);
-                        })
-                        .build();
-
-        // Kick off the async streaming request (non-blocking)
-        CompletableFuture<?> fut = async.converseStream(request, handler);
-
-        // If the fut completes with an exception, close the SSE with error.
-        fut.whenComplete((ok, ex) -> {
-            if (ex != null) emitter.completeWithError(ex);
+                });
+
+        if (!prompt.system().isEmpty()) {
+            builder.system(prompt.system());
+        }
+
+        // Batching + backpressure + cancel-on-disconnect live in the relay.
+        var relay = new SseRelay(emitter, flushTimer, sseWriter, flushChars, flushMillis, this::recordStream);
+        attemptStream(new Routed<>(builder.build(), router.classify(plan)), relay, threadId, 1);
+    }
+
+    private void attemptStream(Routed<ConverseStreamRequest> routed, SseRelay relay, String threadId, int attempt) {
+        admission.acquire(threadId).whenComplete((permit, denied) -> {
+            if (denied != null) {
+                relay.onError(unwrap(denied));
+                return;
+            }
+            if (relay.isClosed()) { // client left while queued
+                permit.release(BedrockAdmission.Outcome.CANCELLED);
+                return;
+            }
+            var handler = ConverseStreamResponseHandler.builder()
+                    .subscriber(relay::attempt)
+                    .build();
+
+            // Kick off the async streaming request (non-blocking)
+            String model = router.pick(routed.route());
+            long t0 = System.nanoTime();
+            CompletableFuture<?> fut = async.converseStream(routed.request().toBuilder().modelId(model).build(), handler);
+
+            // On failure: retry if nothing reached the client yet, otherwise close the SSE with error.
+            fut.whenComplete((ok, ex) -> {
+                if (ex == null) {
+                    permit.release(BedrockAdmission.Outcome.OK);
+                    long first = relay.firstTokenNanos();
+                    router.record(model, BedrockAdmission.Outcome.OK, first == 0 ? -1 : first - t0);
+                    recordCall("stream", "ok", System.nanoTime() - t0);
+                    return;
+                }
+                Throwable cause = unwrap(ex);
+                var outcome = relay.isClosed() ? BedrockAdmission.Outcome.CANCELLED : BedrockAdmission.outcomeOf(cause);
+                permit.release(outcome);
+                router.record(model, outcome, -1);
+                long delay = relay.started() || relay.isClosed() ? -1 : admission.retryDelayMillis(attempt, cause);
+                if (delay < 0) {
+                    recordCall("stream", "error", System.nanoTime() - t0);
+                    relay.onError(cause);
+                } else {
+                    admission.retryLater(delay, () -> attemptStream(routed, relay, threadId, attempt + 1));
+                }
+            });
         });
     }
 
+    public UsageStats usageStats() {
+        return new UsageStats(calls.get(), inputTokens.get(), outputTokens.get(),
+                cacheReadTokens.get(), cacheWriteTokens.get());
+    }
+
+    public PromptBudgetPlanner.Stats budgetStats() {
+        return planner.stats();
+    }
+
+    public BedrockAdmission.Stats admissionStats() {
+        return admission.stats();
+    }
+
+    public ModelRouter.Stats routingStats() {
+        return router.stats();
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
     private java.util.List<Message> requireMessages(ChatRequest req) {
         if (req.messages() == null || req.messages().isEmpty())
             throw new IllegalArgumentException("messages must not be empty");
         return req.messages();
     }
 
-    private java.util.List<software.amazon.awssdk.services.bedrockruntime.model.Message>
-    toBedrockMessages(ChatRequest req) {
+    /**
+     * Lays the request out so everything that repeats turn over turn comes first:
+     * system, the whole persisted memory, then history (append-only), and only then this turn's
+     * files/links, retrieved memory chunks and question. Cache checkpoints go after each stable part that is long enough.
+     * Each context segment is its own content block, so the thread's memory is never concatenated per turn.
+     */
+    Prompt toPrompt(WrappedRequest wrapped) {
+        var req = wrapped.request();
+        int cachePoints = 0;
+        int prefixTokens = 0;
+
+        var system = new ArrayList<SystemContentBlock>();
+        if (req.system() != null && !req.system().isBlank()) {
+            system.add(SystemContentBlock.fromText(req.system()));
+            prefixTokens += TokenEstimator.estimate(req.system());
+            if (cacheable(prefixTokens, cachePoints)) {
+                system.add(SystemContentBlock.fromCachePoint(cachePoint()));
+                cachePoints++;
+            }
+        }
+
         var list = new ArrayList<software.amazon.awssdk.services.bedrockruntime.model.Message>();
-        for (var m : requireMessages(req)) {
+
+        var stable = wrapped.stableContext();
+        if (!stable.isEmpty()) {
+            var blocks = new ArrayList<ContentBlock>(stable.size() + 3);
+            contextBlocks(blocks, PERSISTED_PREAMBLE, stable);
+            prefixTokens += TokenEstimator.estimate(PERSISTED_PREAMBLE) + TokenEstimator.estimate(CONTEXT_CLOSE);
+            for (var seg : stable) prefixTokens += TokenEstimator.estimate(seg.block());
+            if (cacheable(prefixTokens, cachePoints)) {
+                blocks.add(ContentBlock.fromCachePoint(cachePoint()));
+                cachePoints++;
+            }
+            addMerged(list, ConversationRole.USER, blocks);
+        }
+
+        var history = requireMessages(req);
+        int lastUser = -1;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (roleOf(history.get(i)) == ConversationRole.USER && !isBlank(history.get(i))) { lastUser = i; break; }
+        }
+
+        for (int i = 0; i < history.size(); i++) {
+            var m = history.get(i);
             String text = (m.content() == null) ? "" : m.content().trim();
             if (text.isEmpty()) continue; // <-- skip empty content blocks
 
-            var role = switch (String.valueOf(m.role()).toLowerCase()) {
-                case "user" -> ConversationRole.USER;
-                case "assistant" -> ConversationRole.ASSISTANT;
-                default -> ConversationRole.USER;
-            };
+            var blocks = new ArrayList<ContentBlock>();
+            var turn = wrapped.turnContext();
+            if (i == lastUser && !turn.isEmpty()) {
+                contextBlocks(blocks, stable.isEmpty() ? CONTEXT_PREAMBLE : TURN_HEADER, turn);
+            }
+            blocks.add(ContentBlock.fromText(text));
 
-            list.add(software.amazon.awssdk.services.bedrockruntime.model.Message.builder()
-                    .role(role)
-                    .content(ContentBlock.fromText(text))
-                    .build());
+            // checkpoint the history just before the newest question: next turn re-reads all of it
+            if (i < lastUser) {
+                prefixTokens += TokenEstimator.estimate(text);
+                if (i == lastUser - 1 && cacheable(prefixTokens, cachePoints)) {
+                    blocks.add(ContentBlock.fromCachePoint(cachePoint()));
+                    cachePoints++;
+                }
+            }
+            addMerged(list, roleOf(m), blocks);
         }
         if (list.isEmpty()) {
             throw new IllegalArgumentException("No non-empty messages to send");
         }
-        return list;
+        return new Prompt(system, list);
+    }
+
+    /** One content block per segment, between the preamble and the close. */
+    private static void contextBlocks(List<ContentBlock> blocks, String preamble, List<ContextSegment> segments) {
+        blocks.add(ContentBlock.fromText(preamble));
+        for (var seg : segments) blocks.add(ContentBlock.fromText(seg.block()));
+        blocks.add(ContentBlock.fromText(CONTEXT_CLOSE));
+    }
+
+    /** Converse wants alternating roles; consecutive same-role turns become one message with several blocks. */
+    private static void addMerged(List<software.amazon.awssdk.services.bedrockruntime.model.Message> list,
+                                  ConversationRole role, List<ContentBlock> blocks) {
+        if (!list.isEmpty() && list.get(list.size() - 1).role() == role) {
+            var prev = list.remove(list.size() - 1);
+            var merged = new ArrayList<>(prev.content());
+            merged.addAll(blocks);
+            blocks = merged;
+        }
+        list.add(software.amazon.awssdk.services.bedrockruntime.model.Message.builder()
+                .role(role)
+                .content(blocks)
+                .build());
+    }
+
+    private boolean cacheable(int prefixTokens, int used) {
+        return promptCache && used < MAX_CACHE_POINTS && prefixTokens >= cacheMinTokens;
+    }
+
+    private static CachePointBlock cachePoint() {
+        return CachePointBlock.builder().type(CachePointType.DEFAULT).build();
+    }
+
+    private static ConversationRole roleOf(Message m) {
+        return switch (String.valueOf(m.role()).toLowerCase()) {
+            case "user" -> ConversationRole.USER;
+            case "assistant" -> ConversationRole.ASSISTANT;
+            default -> ConversationRole.USER;
+        };
+    }
+
+    private static boolean isBlank(Message m) {
+        return m.content() == null || m.content().isBlank();
+    }
+
+    // ----------------------------
+    // metrics
+    // ----------------------------
+
+    private void recordUsage(TokenUsage usage, String mode) {
+        calls.incrementAndGet();
+        if (usage == null) return;
+        countTokens(inputTokens, usage.inputTokens(), "input", mode);
+        countTokens(outputTokens, usage.outputTokens(), "output", mode);
+        countTokens(cacheReadTokens, usage.cacheReadInputTokens(), "cache_read", mode);
+        countTokens(cacheWriteTokens, usage.cacheWriteInputTokens(), "cache_write", mode);
+    }
+
+    private void countTokens(AtomicLong total, Integer n, String type, String mode) {
+        if (n == null) return;
+        total.addAndGet(n);
+        Counter.builder("bedrock.tokens")
+                .description("Tokens reported by Converse usage")
+                .tag("type", type)
+                .tag("mode", mode)
+                .register(registry)
+                .increment(n);
+    }
+
+    /** Time to first token and decode speed come from the relay; usage and server latency from the metadata event. */
+    private void recordStream(SseRelay.StreamSummary s) {
+        recordUsage(s.usage(), "stream");
+        recordServerLatency(s.serverLatencyMs(), "stream");
+        if (s.timeToFirstTokenNanos() >= 0) {
+            Timer.builder("bedrock.stream.ttft")
+                    .description("Time from sending a ConverseStream request to its first text delta")
+                    .register(registry)
+                    .record(s.timeToFirstTokenNanos(), TimeUnit.NANOSECONDS);
+        }
+        Integer out = s.usage() == null ? null : s.usage().outputTokens();
+        if (out != null && out > 1 && s.generationNanos() > 0) {
+            DistributionSummary.builder("bedrock.stream.tokens.per.second")
+                    .description("Output tokens per second after the first token")
+                    .baseUnit("tokens/s")
+                    .register(registry)
+                    .record(out / (s.generationNanos() / 1e9));
+        }
+    }
+
+    private void recordServerLatency(Long millis, String mode) {
+        if (millis == null) return;
+        Timer.builder("bedrock.server.latency")
+                .description("Model latency reported by Bedrock")
+                .tag("mode", mode)
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void recordCall(String mode, String outcome, long nanos) {
+        Timer.builder("bedrock.call")
+                .description("Client-side Converse call duration")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
     }
 }
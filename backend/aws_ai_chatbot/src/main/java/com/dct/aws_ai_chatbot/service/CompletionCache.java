@@ -0,0 +1,184 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency layer for non-streaming completions.
+ * Identical requests that arrive while one is running (retries, double-clicks, abort-and-resend)
+ * share that one call. Finished answers are kept for a short TTL when the client sent an
+ * idempotency key, or when the settings are deterministic (temperature 0).
+ */
+@Component
+public class CompletionCache {
+
+    public record Stats(long hits, long coalesced, long loads, int entries, long chars) {}
+
+    /** How a request is identified: {@code cacheable} says whether its answer may be replayed later. */
+    public record Key(String value, boolean cacheable) {}
+
+    /**
+     * One running load and everyone waiting on it. Each waiter gets its own view; when every waiter has
+     * given up (cancelled or timed out) before the answer arrived, the load itself is cancelled.
+     */
+    private static final class Flight {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final AtomicInteger waiters = new AtomicInteger();
+        volatile Future<?> source;
+
+        CompletableFuture<String> join() {
+            waiters.incrementAndGet();
+            var view = result.copy();
+            view.whenComplete((text, ex) -> {
+                if (!result.isDone() && waiters.decrementAndGet() == 0) cancelSource();
+            });
+            return view;
+        }
+
+        void cancelSource() {
+            var s = source;
+            if (s != null) s.cancel(true);
+        }
+    }
+
+    private final BoundedLru<String> lru;
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public CompletionCache(
+            @Value("${app.completion.cache.max-entries:512}") int maxEntries,
+            @Value("${app.completion.cache.max-chars:4000000}") long maxChars,
+            @Value("${app.completion.cache.ttl-seconds:120}") long ttlSeconds
+    ) {
+        this.lru = new BoundedLru<>(maxEntries, maxChars, ttlSeconds * 1000L, String::length);
+    }
+
+    /**
+     * Key for a request as the client sent it (before links/memory are added, so a retry hashes the same
+     * even though the first attempt already persisted its links). The client key wins when present.
+     */
+    public static Key keyFor(String idempotencyKey, String threadId, ChatRequest req, List<String> attachmentDigests) {
+        String thread = threadId == null ? "" : threadId;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return new Key("idem:" + thread + ":" + idempotencyKey.strip(), true);
+        }
+        boolean deterministic = req.temperature() != null && req.temperature() == 0.0;
+        return new Key("req:" + canonicalHash(thread, req, attachmentDigests), deterministic);
+    }
+
+    /**
+     * Returns the answer for {@code key}: a cached one, the one a concurrent identical request is producing,
+     * or a fresh one from {@code loader}, which runs on the calling thread and returns the pending answer.
+     * Answers the loader flags as errors are shared but never cached. Each caller gets its own future;
+     * cancelling it (or letting it time out) only cancels the load once no other caller is still waiting
+     * for it. A loader that throws is rethrown here.
+     */
+    public CompletableFuture<String> getAsync(Key key, Supplier<CompletableFuture<String>> loader) {
+        if (key.cacheable()) {
+            String cached = lru.get(key.value());
+            if (cached != null) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        var mine = new Flight();
+        var existing = inFlight.putIfAbsent(key.value(), mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.join();
+        }
+        var view = mine.join();
+
+        if (key.cacheable()) {
+            String text = lru.get(key.value());
+            if (text != null) {
+                hits.incrementAndGet();
+                inFlight.remove(key.value(), mine);
+                mine.result.complete(text);
+                return view;
+            }
+        }
+
+        loads.incrementAndGet();
+        CompletableFuture<String> source;
+        try {
+            source = loader.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key.value(), mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        mine.source = source;
+        source.whenComplete((text, ex) -> {
+            if (ex == null) store(key, text);
+            inFlight.remove(key.value(), mine);
+            if (ex == null) mine.result.complete(text);
+            else mine.result.completeExceptionally(ex);
+        });
+        if (mine.waiters.get() == 0) mine.cancelSource(); // everyone left while the loader ran
+        return view;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), coalesced.get(), loads.get(), lru.size(), lru.weight());
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    /** SHA-256 over every field that shapes the answer, each followed by a separator so fields can't run together. */
+    static String canonicalHash(String threadId, ChatRequest req, List<String> attachmentDigests) {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            field(md, threadId);
+            field(md, req.system());
+            field(md, String.valueOf(req.maxTokens()));
+            field(md, String.valueOf(req.temperature()));
+            field(md, String.valueOf(req.topP()));
+            if (req.messages() != null) {
+                for (var m : req.messages()) {
+                    field(md, m.role() == null ? null : m.role().toLowerCase());
+                    field(md, m.content() == null ? null : m.content().strip());
+                }
+            }
+            md.update((byte) 1);
+            if (attachmentDigests != null) {
+                for (String d : attachmentDigests) field(md, d);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void field(MessageDigest md, String s) {
+        if (s != null) md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) (s == null ? 2 : 0));
+    }
+
+    private void store(Key key, String text) {
+        if (key.cacheable() && text != null && !text.startsWith(ClaudeService.ERROR_PREFIX)) {
+            lru.put(key.value(), text);
+        }
+    }
+}
@@ -1,80 +1,719 @@
 package com.dct.aws_ai_chatbot.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.poi.hwpf.HWPFDocument;
 import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Service
 public class ContentExtractService {
 
-    private final TextractOcrService ocr;
+    private static final Logger log = LoggerFactory.getLogger(ContentExtractService.class);
 
-    public ContentExtractService(TextractOcrService ocr) {
+    /** Detected document kind; part of the cache key so a renamed file can't hit the wrong parser's result. */
+    public enum Kind { PDF, DOCX, DOC, TEXT, IMAGE, UNSUPPORTED }
+
+    /**
+     * Extracted text plus the content digest it is cached under (null when extraction failed or is partial:
+     * cut short by the time budget or missing OCR for scanned pages, so it is neither cached nor treated as
+     * already persisted).
+     */
+    public record Extraction(String digest, String text) {}
+
+    /** Text of a PDF with pages missing (not done within the budget, or OCR failed); never cached. */
+    private static final class PartialText extends Exception {
+        final String partialText;
+
+        PartialText(String partialText) {
+            super("extraction incomplete", null, false, false);
+            this.partialText = partialText;
+        }
+    }
+
+    /** A scanned page whose OCR call failed; the page keeps its (near-empty) embedded text. */
+    private static final class OcrFailed extends Exception {
+        OcrFailed() {
+            super("OCR failed", null, false, false);
+        }
+    }
+
+    private final OcrEngine ocr;
+    private final ExtractionCache cache;
+    private final MeterRegistry registry;
+    private final ForkJoinPool pool;
+    private final long budgetNanos;
+    private final int maxPages;
+    private final int pagesPerTask;
+    private final int ocrMinChars;
+    private final float ocrDpi;
+    private final ExecutorService ocrPool;
+    private final Semaphore ocrPermits;
+    private final long spillThreshold;
+    private final Path spillDir;
+    private final long pdfMainMemoryBytes;
+
+    public ContentExtractService(
+            OcrEngine ocr,
+            ExtractionCache cache,
+            MeterRegistry registry,
+            @Value("${app.extract.max-concurrency:0}") int maxConcurrency,
+            @Value("${app.extract.budget-ms:20000}") long budgetMs,
+            @Value("${app.extract.max-pages:500}") int maxPages,
+            @Value("${app.extract.pdf.pages-per-task:8}") int pagesPerTask,
+            @Value("${app.extract.ocr.min-chars-per-page:32}") int ocrMinChars,
+            @Value("${app.extract.ocr.dpi:200}") float ocrDpi,
+            @Value("${app.extract.ocr.max-in-flight:4}") int ocrMaxInFlight,
+            @Value("${app.extract.spill-threshold-bytes:4194304}") long spillThreshold,
+            @Value("${app.extract.spill-dir:}") String spillDir,
+            @Value("${app.extract.pdf.max-main-memory-bytes:16777216}") long pdfMainMemoryBytes
+    ) {
         this.ocr = ocr;
+        this.cache = cache;
+        this.registry = registry;
+        // files and PDF page ranges share one work-stealing pool; 0 = one worker per core
+        this.pool = new ForkJoinPool(maxConcurrency > 0 ? maxConcurrency : Runtime.getRuntime().availableProcessors());
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.maxPages = maxPages;
+        this.pagesPerTask = Math.max(1, pagesPerTask);
+        this.ocrMinChars = ocrMinChars;
+        this.ocrDpi = ocrDpi;
+        // OCR calls are remote I/O: their own threads, so waiting on them never holds a parsing worker
+        var n = new AtomicInteger();
+        this.ocrPool = Executors.newFixedThreadPool(Math.max(1, ocrMaxInFlight), r -> {
+            var t = new Thread(r, "pdf-ocr-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // rendered-but-unfinished pages; rendering waits here, so page images can't pile up in memory
+        this.ocrPermits = new Semaphore(Math.max(1, ocrMaxInFlight));
+        this.spillThreshold = spillThreshold;
+        this.spillDir = Path.of(spillDir == null || spillDir.isBlank() ? System.getProperty("java.io.tmpdir") : spillDir);
+        this.pdfMainMemoryBytes = pdfMainMemoryBytes;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+        ocrPool.shutdownNow();
     }
 
     public String extractText(MultipartFile file) {
+        return extract(file).text();
+    }
+
+    public Extraction extract(MultipartFile file) {
+        return extract(file, new Budget(System.nanoTime() + budgetNanos));
+    }
+
+    /**
+     * Extracts all uploads concurrently under one shared time budget. Results come back in input order;
+     * files still running when the budget runs out are reported as timed out so the turn can go on.
+     */
+    public List<Extraction> extractAll(List<MultipartFile> files) {
+        var budget = new Budget(System.nanoTime() + budgetNanos);
+        if (files.size() == 1) return List.of(extract(files.get(0), budget));
+
+        var futures = new ArrayList<Future<Extraction>>(files.size());
+        for (var f : files) futures.add(pool.submit(() -> extract(f, budget)));
+
+        var results = new ArrayList<Extraction>(files.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                var f = futures.get(i);
+                try {
+                    results.add(f.get(budget.remainingNanos(), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    f.cancel(true);
+                    results.add(new Extraction(null, "[extraction timed out for " + nameOf(files.get(i)) + "]"));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    budget.cancel();
+                    f.cancel(true);
+                    results.add(new Extraction(null, "[extraction interrupted for " + nameOf(files.get(i)) + "]"));
+                } catch (ExecutionException e) {
+                    results.add(new Extraction(null, "[error extracting text: " + e.getCause().getMessage() + "]"));
+                }
+            }
+        } finally {
+            budget.cancel(); // files given up on stop at their next page; cancel() alone wouldn't stop a worker
+        }
+        return results;
+    }
+
+    private Extraction extract(MultipartFile file, Budget budget) {
+        String name = nameOf(file);
         try {
-            String name = file.getOriginalFilename() == null ? "file" : file.getOriginalFilename();
             String lower = name.toLowerCase();
             String ctype = (file.getContentType() == null ? "" : file.getContentType().toLowerCase());
-            byte[] bytes = file.getBytes();
+            Kind kind = detect(ctype, lower);
 
-            // --- PDFs (keep your current behavior) ---
-            if (ctype.contains("pdf") || lower.endsWith(".pdf")) {
-                try (var doc = Loader.loadPDF(bytes)) {
-                    var stripper = new PDFTextStripper();
-                    return stripper.getText(doc);
-                }
+            if (kind == Kind.UNSUPPORTED) {
+                return new Extraction(null, "[unsupported content-type: %s for %s]".formatted(ctype, name));
+            }
+
+            try (var upload = Upload.of(file, spillThreshold, spillDir, budget)) {
+                String digest = upload.digest(kind);
+                String text = cache.get(digest, budget.deadline, () -> timed(kind, upload, budget));
+                return new Extraction(digest, text);
+            }
+        } catch (PartialText e) {
+            return new Extraction(null, e.partialText);
+        } catch (TimeoutException | InterruptedIOException e) {
+            return new Extraction(null, "[extraction timed out for " + name + "]");
+        } catch (Exception e) {
+            return new Extraction(null, "[error extracting text: " + e.getMessage() + "]");
+        }
+    }
+
+    public ExtractionCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    static Kind detect(String ctype, String lower) {
+        if (ctype.contains("pdf") || lower.endsWith(".pdf")) return Kind.PDF;
+        if (ctype.contains("officedocument.wordprocessingml.document") || lower.endsWith(".docx")) return Kind.DOCX;
+        if (ctype.contains("msword") || lower.endsWith(".doc")) return Kind.DOC;
+        if (ctype.startsWith("text/") || lower.endsWith(".txt") || lower.endsWith(".md")) return Kind.TEXT;
+        if (ctype.startsWith("image/") || lower.matches(".*\\.(jpe?g|png|webp|bmp|tiff?)$")) return Kind.IMAGE;
+        return Kind.UNSUPPORTED;
+    }
+
+    private static String nameOf(MultipartFile file) {
+        return file.getOriginalFilename() == null ? "file" : file.getOriginalFilename();
+    }
+
+    /** Parse time only: cache hits don't reach here. */
+    private String timed(Kind kind, Upload upload, Budget budget) throws Exception {
+        return Timer.builder("extract.parse")
+                .description("Attachment text extraction (parse/OCR) on cache miss")
+                .tag("kind", kind.name().toLowerCase())
+                .register(registry)
+                .recordCallable(() -> extractUpload(kind, upload, budget));
+    }
+
+    private String extractUpload(Kind kind, Upload upload, Budget budget) throws Exception {
+        switch (kind) {
+            // --- PDFs: page ranges in parallel, capped at maxPages; scanned pages OCR'd ---
+            case PDF -> {
+                return pdfText(upload, budget);
             }
 
-            // --- DOCX ---
-            if (ctype.contains("officedocument.wordprocessingml.document") || lower.endsWith(".docx")) {
-                try (var is = new ByteArrayInputStream(bytes); var doc = new XWPFDocument(is)) {
-                    var sb = new StringBuilder();
-                    doc.getParagraphs().forEach(p -> {
-                        var t = p.getText();
-                        if (t != null && !t.isBlank()) sb.append(t).append('\n');
-                    });
-                    doc.getTables().forEach(tbl -> tbl.getRows().forEach(r ->
-                            r.getTableCells().forEach(c -> {
-                                var t = c.getText();
-                                if (t != null && !t.isBlank()) sb.append(t).append('\n');
-                            })));
-                    return sb.toString();
+            // --- DOCX: a spilled file is read through the zip's central directory, not inflated whole ---
+            case DOCX -> {
+                if (upload.file() == null) {
+                    try (var is = upload.open(); var doc = new XWPFDocument(is)) {
+                        return docxText(doc);
+                    }
+                }
+                var pkg = OPCPackage.open(upload.file().toFile(), PackageAccess.READ);
+                try {
+                    return docxText(new XWPFDocument(pkg));
+                } finally {
+                    pkg.revert(); // read-only package: close() would try to save it
                 }
             }
 
             // --- Legacy DOC ---
-            if (ctype.contains("msword") || lower.endsWith(".doc")) {
-                try (var is = new ByteArrayInputStream(bytes); var doc = new HWPFDocument(is)) {
+            case DOC -> {
+                try (var fs = upload.file() == null ? new POIFSFileSystem(upload.open())
+                                                    : new POIFSFileSystem(upload.file().toFile(), true);
+                     var doc = new HWPFDocument(fs)) {
                     try (var ex = new WordExtractor(doc)) {
                         return String.join("\n", ex.getParagraphText());
                     }
                 }
             }
 
-            // --- Plain text ---
-            if (ctype.startsWith("text/") || lower.endsWith(".txt") || lower.endsWith(".md")) {
-                return new String(bytes, StandardCharsets.UTF_8);
+            // --- Plain text (decoded while streaming; no raw copy alongside the String) ---
+            case TEXT -> {
+                try (var in = new InputStreamReader(upload.open(), StandardCharsets.UTF_8)) {
+                    var sw = new StringWriter();
+                    in.transferTo(sw);
+                    return sw.toString();
+                }
             }
 
             // --- Images (JPEG/PNG/WEBP/etc.) -> OCR via Textract ---
-            if (ctype.startsWith("image/") || lower.matches(".*\\.(jpe?g|png|webp|bmp|tiff?)$")) {
-                return ocr.detectLines(bytes);
+            case IMAGE -> {
+                return ocr.detectLines(upload.bytes());
             }
 
-            // Fallback
-            return "[unsupported content-type: %s for %s]".formatted(ctype, name);
-        } catch (Exception e) {
-            return "[error extracting text: " + e.getMessage() + "]";
+            default -> throw new IllegalArgumentException("unsupported kind " + kind);
+        }
+    }
+
+    private static String docxText(XWPFDocument doc) {
+        var sb = new StringBuilder();
+        doc.getParagraphs().forEach(p -> {
+            var t = p.getText();
+            if (t != null && !t.isBlank()) sb.append(t).append('\n');
+        });
+        doc.getTables().forEach(tbl -> tbl.getRows().forEach(r ->
+                r.getTableCells().forEach(c -> {
+                    var t = c.getText();
+                    if (t != null && !t.isBlank()) sb.append(t).append('\n');
+                })));
+        return sb.toString();
+    }
+
+    // ----------------------------
+    // Upload spilling
+    // ----------------------------
+
+    /**
+     * An upload's content for one extraction: small uploads stay in memory, anything above
+     * {@code spill-threshold-bytes} is streamed to a temp file (deleted on close) and parsed from there,
+     * so heap use per upload doesn't grow with its size.
+     */
+    private static final class Upload implements AutoCloseable {
+        private final byte[] bytes;
+        private final Path file;
+
+        private Upload(byte[] bytes, Path file) {
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        /** Spilling copies in chunks and stops with an InterruptedIOException once the budget is gone. */
+        static Upload of(MultipartFile upload, long spillThreshold, Path dir, Budget budget) throws IOException {
+            if (upload.getSize() <= spillThreshold) return new Upload(upload.getBytes(), null);
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "upload-", ".bin");
+            try (InputStream in = upload.getInputStream(); OutputStream out = Files.newOutputStream(tmp)) {
+                var buf = new byte[64 * 1024];
+                for (int n; (n = in.read(buf)) > 0; ) {
+                    if (budget.expired()) throw new InterruptedIOException("extraction cancelled");
+                    out.write(buf, 0, n);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            return new Upload(null, tmp);
+        }
+
+        /** The spilled temp file, or null when the upload is held in memory. */
+        Path file() {
+            return file;
+        }
+
+        InputStream open() throws IOException {
+            return file == null ? new ByteArrayInputStream(bytes) : Files.newInputStream(file);
+        }
+
+        /** The whole content; only for consumers that need an array anyway (Textract's image bytes). */
+        byte[] bytes() throws IOException {
+            return file == null ? bytes : Files.readAllBytes(file);
+        }
+
+        /** Random access for PDFBox: spilled files are memory-mapped (off-heap, paged in on demand). */
+        RandomAccessRead pdfSource() throws IOException {
+            return file == null ? new RandomAccessReadBuffer(bytes) : new RandomAccessReadMemoryMappedFile(file);
+        }
+
+        String digest(Kind kind) throws IOException {
+            if (file == null) return ExtractionCache.digest(kind.name(), bytes);
+            try (var in = open()) {
+                return ExtractionCache.digest(kind.name(), in);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (file == null) return;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete spilled upload {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Opens the PDF with PDFBox's scratch memory capped at {@code pdf.max-main-memory-bytes}; decoded streams
+     * beyond that go to temp files next to the spilled uploads.
+     */
+    private PDDocument loadPdf(Upload upload) throws IOException {
+        var scratch = MemoryUsageSetting.setupMixed(pdfMainMemoryBytes).setTempDir(spillDir.toFile());
+        return Loader.loadPDF(upload.pdfSource(), scratch.streamCache);
+    }
+
+    // ----------------------------
+    // PDF page ranges
+    // ----------------------------
+
+    /**
+     * Small PDFs are stripped on the calling thread. Longer ones are split into ranges of {@code pagesPerTask}
+     * pages, forked on the pool and merged in page order. PDFBox documents aren't thread-safe, so each worker
+     * loads the upload once and strips all the ranges it runs from that copy. Pages that look scanned are
+     * rendered and OCR'd concurrently. Pages not done by the deadline are skipped, scanned pages whose OCR
+     * failed keep their embedded text, and in either case the result is not cached.
+     */
+    private String pdfText(Upload upload, Budget budget) throws IOException, PartialText {
+        int total;
+        int pages;
+        String[] text;
+        AtomicReferenceArray<Future<String>> ocrText;
+        var docs = new ConcurrentHashMap<Thread, PDDocument>(); // per worker; closed when all ranges are done
+        try {
+            var doc = loadPdf(upload);
+            docs.put(Thread.currentThread(), doc);
+            total = doc.getNumberOfPages();
+            pages = Math.min(total, maxPages);
+            text = new String[pages];
+            ocrText = new AtomicReferenceArray<>(pages);
+            if (pages <= pagesPerTask) {
+                stripPages(doc, 0, pages, text, ocrText, budget);
+            } else {
+                int ranges = (pages + pagesPerTask - 1) / pagesPerTask;
+                var task = new PageRanges(upload, docs, text, ocrText, 0, ranges, budget);
+                if (ForkJoinTask.getPool() == pool) {
+                    task.invoke(); // already a worker (extractAll): its ranges reuse this document
+                } else {
+                    docs.remove(Thread.currentThread()).close();
+                    runOnPool(task, budget);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (var doc : docs.values()) closeQuietly(doc);
+        }
+
+        var sb = new StringBuilder();
+        int skipped = 0;
+        int ocrFailed = 0;
+        for (int i = 0; i < pages; i++) {
+            var pending = ocrText.get(i);
+            if (pending != null) {
+                try {
+                    text[i] = awaitOcr(pending, i, text[i], budget);
+                } catch (OcrFailed e) {
+                    ocrFailed++;
+                }
+            }
+            if (text[i] == null) skipped++;
+            else sb.append(text[i]);
+        }
+        if (total > pages) {
+            sb.append("\n[truncated: first ").append(pages).append(" of ").append(total).append(" pages extracted]");
+        }
+        if (ocrFailed > 0) {
+            sb.append("\n[OCR failed for ").append(ocrFailed).append(" of ")
+                    .append(pages).append(" pages: embedded text only]");
+        }
+        if (skipped > 0) {
+            sb.append("\n[extraction time budget exceeded: ").append(skipped).append(" of ")
+                    .append(pages).append(" pages skipped]");
+        }
+        if (ocrFailed > 0 || skipped > 0) throw new PartialText(sb.toString());
+        return sb.toString();
+    }
+
+    /**
+     * Strips pages {@code [from, to)} (0-based) one at a time so each page's text density is known. A page with
+     * almost no text but an image on it is treated as scanned: rendered (grayscale, {@code ocrDpi}) and queued
+     * for OCR. Pages reached after the deadline, or once the caller gave up, stay null.
+     */
+    private void stripPages(PDDocument doc, int from, int to, String[] text,
+                            AtomicReferenceArray<Future<String>> ocrText, Budget budget) throws IOException {
+        var stripper = new PDFTextStripper();
+        PDFRenderer renderer = null;
+        for (int i = from; i < to; i++) {
+            if (budget.expired()) return;
+            stripper.setStartPage(i + 1);
+            stripper.setEndPage(i + 1);
+            String t = stripper.getText(doc);
+            if (ocr != null && ocrMinChars > 0 && looksScanned(doc.getPage(i), t)) {
+                if (renderer == null) renderer = new PDFRenderer(doc);
+                var pending = submitOcr(renderPng(renderer, i), budget);
+                if (pending == null) continue; // no OCR slot before the deadline: skipped
+                ocrText.set(i, pending);
+            }
+            text[i] = t;
+        }
+    }
+
+    private boolean looksScanned(PDPage page, String text) {
+        int chars = 0;
+        for (int i = 0; i < text.length() && chars < ocrMinChars; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) chars++;
+        }
+        if (chars >= ocrMinChars) return false;
+        var resources = page.getResources();
+        if (resources == null) return false;
+        for (var name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) return true;
+        }
+        return false;
+    }
+
+    private byte[] renderPng(PDFRenderer renderer, int page) throws IOException {
+        BufferedImage image = renderer.renderImageWithDPI(page, ocrDpi, ImageType.GRAY);
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Hands a rendered page to the OCR pool once one of the in-flight slots frees up; null past the deadline.
+     * The wait is a managed block, so the pool adds a worker while this one waits.
+     */
+    private Future<String> submitOcr(byte[] png, Budget budget) {
+        try {
+            var slot = new OcrSlot(budget);
+            ForkJoinPool.managedBlock(slot);
+            if (!slot.acquired) return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return ocrPool.submit(() -> {
+                try {
+                    return ocr.detectLines(png);
+                } finally {
+                    ocrPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ocrPermits.release();
+            return null;
+        }
+    }
+
+    /**
+     * OCR text for a page (the stripped text if OCR found none), or null if it didn't finish in time.
+     * Called from a pool worker when extractAll runs the file there, so the wait is a managed block.
+     */
+    private String awaitOcr(Future<String> pending, int page, String stripped, Budget budget) throws OcrFailed {
+        String outcome = "ok";
+        try {
+            ForkJoinPool.managedBlock(new OcrResult(pending, budget));
+            String t = pending.get(budget.remainingNanos(), TimeUnit.NANOSECONDS);
+            return t == null || t.isBlank() ? stripped : t + "\n";
+        } catch (TimeoutException e) {
+            outcome = "timed_out";
+            pending.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = "timed_out";
+            pending.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            outcome = "failed";
+            log.warn("OCR failed for PDF page {}: {}", page + 1, e.getCause().toString());
+            throw new OcrFailed();
+        } finally {
+            Counter.builder("extract.ocr.pages")
+                    .description("Scanned PDF pages sent to OCR")
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    private static void closeQuietly(PDDocument doc) {
+        try {
+            doc.close();
+        } catch (IOException e) {
+            log.debug("Could not close PDF: {}", e.toString());
+        }
+    }
+
+    /**
+     * Runs the page ranges of a file the caller is extracting off the pool. If the caller is interrupted (its
+     * stage was cancelled) the ranges are told to stop and are waited for, since they still read the upload.
+     */
+    private void runOnPool(PageRanges task, Budget budget) throws IOException {
+        pool.execute(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            budget.cancel();
+            task.quietlyJoin();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * One extraction's deadline plus a flag set once nobody is waiting for it any more. Cancelling a pool
+     * future doesn't stop the worker running it, so leaves check this before each page and spilling before
+     * each chunk.
+     */
+    private static final class Budget {
+        /** How long a wait may go before it re-checks {@link #cancelled}. */
+        private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+        final long deadline;
+        private volatile boolean cancelled;
+
+        Budget(long deadline) {
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean expired() {
+            return cancelled || System.nanoTime() - deadline >= 0;
+        }
+
+        long remainingNanos() {
+            return cancelled ? 0 : Math.max(0, deadline - System.nanoTime());
+        }
+
+        long nextWaitNanos() {
+            return Math.min(POLL_NANOS, remainingNanos());
+        }
+    }
+
+    /** Waits for an OCR slot until the budget runs out; {@code acquired} says whether it got one. */
+    private final class OcrSlot implements ForkJoinPool.ManagedBlocker {
+        private final Budget budget;
+        boolean acquired;
+
+        OcrSlot(Budget budget) {
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!acquired && !budget.expired()) {
+                acquired = ocrPermits.tryAcquire(budget.nextWaitNanos(), TimeUnit.NANOSECONDS);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return acquired || (acquired = ocrPermits.tryAcquire());
+        }
+    }
+
+    /** Waits until an OCR call is done or the budget runs out; the caller then reads the outcome. */
+    private record OcrResult(Future<String> pending, Budget budget) implements ForkJoinPool.ManagedBlocker {
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!isReleasable()) {
+                try {
+                    pending.get(budget.nextWaitNanos(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | TimeoutException | CancellationException e) {
+                    // reported by the caller
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return pending.isDone() || budget.expired();
+        }
+    }
+
+    /** Halves the range list until one range is left, then strips it with this worker's document. */
+    private final class PageRanges extends RecursiveAction {
+        private final Upload upload;
+        private final Map<Thread, PDDocument> docs;
+        private final String[] text;
+        private final AtomicReferenceArray<Future<String>> ocrText;
+        private final int lo;
+        private final int hi;
+        private final Budget budget;
+
+        PageRanges(Upload upload, Map<Thread, PDDocument> docs, String[] text,
+                   AtomicReferenceArray<Future<String>> ocrText, int lo, int hi, Budget budget) {
+            this.upload = upload;
+            this.docs = docs;
+            this.text = text;
+            this.ocrText = ocrText;
+            this.lo = lo;
+            this.hi = hi;
+            this.budget = budget;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PageRanges(upload, docs, text, ocrText, lo, mid, budget),
+                        new PageRanges(upload, docs, text, ocrText, mid, hi, budget));
+                return;
+            }
+            if (budget.expired()) return; // left null: reported as skipped
+            int from = lo * pagesPerTask;
+            int to = Math.min(text.length, from + pagesPerTask);
+            try {
+                // a leaf never forks or joins, so a worker strips one range at a time and its document is never shared
+                var doc = docs.get(Thread.currentThread());
+                if (doc == null) {
+                    doc = loadPdf(upload);
+                    docs.put(Thread.currentThread(), doc);
+                }
+                stripPages(doc, from, to, text, ocrText, budget);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 }
@@ -0,0 +1,239 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the parts of a thread's persisted memory that matter for the current question.
+ * Segments are cut into chunks and kept in a per-thread BM25 inverted index that is extended
+ * as segments are appended (and rebuilt when the head of the memory was trimmed). Small
+ * threads bypass retrieval and get their full memory.
+ */
+@Service
+public class ContextRetriever {
+
+    /** One chunk that made it into the prompt, for the debug view. */
+    public record Pick(String label, int part, int start, int end, double score, String preview) {}
+
+    /** Context to inject plus how it was chosen. */
+    public record Selection(List<ContextSegment> context, boolean fullContext, int totalChunks, int estimatedTokens, List<Pick> picks) {}
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_INDEXED_THREADS = 256;
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "can", "do", "does", "for", "from", "how",
+            "i", "if", "in", "is", "it", "me", "my", "of", "on", "or", "so", "that", "the", "this", "to",
+            "was", "we", "what", "when", "where", "which", "who", "why", "with", "you", "your");
+
+    private record Chunk(ThreadMemoryService.Segment seg, int part, int start, int end, int length, int tokens) {
+        String text() { return seg.text().substring(start, end); }
+    }
+
+    /** Inverted index over one thread's chunks; guarded by its own monitor. */
+    private static final class Index {
+        final List<ThreadMemoryService.Segment> source = new ArrayList<>();
+        final List<Chunk> chunks = new ArrayList<>();
+        final Map<String, List<int[]>> postings = new HashMap<>(); // term -> [chunkId, tf]
+        long totalLength;
+    }
+
+    private final ThreadMemoryService memory;
+    private final boolean enabled;
+    private final int topK;
+    private final int budgetTokens;
+    private final int chunkChars;
+
+    // LRU of per-thread indexes; guarded by "this"
+    private final LinkedHashMap<String, Index> indexes = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+            return size() > MAX_INDEXED_THREADS;
+        }
+    };
+
+    public ContextRetriever(
+            ThreadMemoryService memory,
+            @Value("${app.retrieval.enabled:true}") boolean enabled,
+            @Value("${app.retrieval.top-k:12}") int topK,
+            @Value("${app.retrieval.budget-tokens:6000}") int budgetTokens,
+            @Value("${app.retrieval.chunk-chars:1500}") int chunkChars
+    ) {
+        this.memory = memory;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.budgetTokens = budgetTokens;
+        this.chunkChars = chunkChars;
+    }
+
+    /**
+     * Selects persisted context for {@code query}. Falls back to the full memory when retrieval is
+     * disabled or the whole thread fits within the token budget.
+     */
+    public Selection select(String threadId, String query) {
+        var segments = memory.segments(threadId);
+        if (segments.isEmpty()) {
+            forget(threadId);
+            return new Selection(List.of(), true, 0, 0, List.of());
+        }
+
+        int totalTokens = 0;
+        for (var s : segments) totalTokens += TokenEstimator.estimate(s.label()) + TokenEstimator.estimate(s.text()) + 4;
+        if (!enabled || totalTokens <= budgetTokens) {
+            return new Selection(memory.context(threadId), true, 0, totalTokens, List.of());
+        }
+
+        Index index = indexFor(threadId, segments);
+        synchronized (index) {
+            return rank(index, query == null ? "" : query);
+        }
+    }
+
+    public synchronized void forget(String threadId) {
+        if (threadId != null) indexes.remove(threadId);
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private Index indexFor(String threadId, List<ThreadMemoryService.Segment> segments) {
+        Index index;
+        synchronized (this) {
+            index = indexes.computeIfAbsent(threadId, id -> new Index());
+        }
+        synchronized (index) {
+            if (!isPrefix(index.source, segments)) {
+                // head was trimmed or memory replaced: start over
+                index.source.clear();
+                index.chunks.clear();
+                index.postings.clear();
+                index.totalLength = 0;
+            }
+            for (int i = index.source.size(); i < segments.size(); i++) {
+                var seg = segments.get(i);
+                index.source.add(seg);
+                addSegment(index, seg);
+            }
+        }
+        return index;
+    }
+
+    private static boolean isPrefix(List<ThreadMemoryService.Segment> indexed, List<ThreadMemoryService.Segment> current) {
+        if (indexed.size() > current.size()) return false;
+        for (int i = 0; i < indexed.size(); i++) {
+            if (indexed.get(i) != current.get(i)) return false;
+        }
+        return true;
+    }
+
+    private void addSegment(Index index, ThreadMemoryService.Segment seg) {
+        String text = seg.text();
+        int start = 0;
+        int part = 1;
+        while (start < text.length()) {
+            int end = cutPoint(text, start);
+            int id = index.chunks.size();
+            var tf = termFrequencies(seg.label() + " " + text.substring(start, end));
+            int length = 0;
+            for (var e : tf.entrySet()) {
+                length += e.getValue();
+                index.postings.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(new int[]{id, e.getValue()});
+            }
+            int tokens = TokenEstimator.estimate(seg.label()) + TokenEstimator.estimate(CharBuffer.wrap(text, start, end)) + 8;
+            index.chunks.add(new Chunk(seg, part++, start, end, length, tokens));
+            index.totalLength += length;
+            start = end;
+        }
+    }
+
+    /** End of the chunk starting at {@code start}: prefer a paragraph, line or sentence break in the last third. */
+    private int cutPoint(String text, int start) {
+        int hard = Math.min(text.length(), start + chunkChars);
+        if (hard == text.length()) return hard;
+        int floor = start + (chunkChars * 2) / 3;
+        for (String sep : new String[]{"\n\n", "\n", ". ", " "}) {
+            int i = text.lastIndexOf(sep, hard - sep.length());
+            if (i >= floor) return i + sep.length();
+        }
+        return hard;
+    }
+
+    private Selection rank(Index index, String query) {
+        int n = index.chunks.size();
+        double avgLen = n == 0 ? 1 : Math.max(1.0, (double) index.totalLength / n);
+        double[] scores = new double[n];
+
+        for (String term : termFrequencies(query).keySet()) {
+            var posting = index.postings.get(term);
+            if (posting == null) continue;
+            double idf = Math.log(1 + (n - posting.size() + 0.5) / (posting.size() + 0.5));
+            for (int[] p : posting) {
+                int len = index.chunks.get(p[0]).length();
+                double tf = p[1];
+                scores[p[0]] += idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * len / avgLen));
+            }
+        }
+
+        var order = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) order.add(i);
+        boolean anyHit = false;
+        for (double s : scores) if (s > 0) { anyHit = true; break; }
+        if (anyHit) {
+            order.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+        } else {
+            // nothing matched lexically ("summarize this"): prefer the most recent material
+            order.sort(Comparator.reverseOrder());
+        }
+
+        var chosen = new ArrayList<Integer>();
+        int tokens = 0;
+        for (int i : order) {
+            if (chosen.size() >= topK) break;
+            if (anyHit && scores[i] <= 0) break;
+            var c = index.chunks.get(i);
+            int t = c.tokens();
+            if (tokens + t > budgetTokens) continue;
+            chosen.add(i);
+            tokens += t;
+        }
+        chosen.sort(null); // back to document order so the model reads chunks in sequence
+
+        var blocks = new ArrayList<ContextSegment>(chosen.size());
+        var picks = new ArrayList<Pick>(chosen.size());
+        for (int i : chosen) {
+            var c = index.chunks.get(i);
+            String text = c.text();
+            blocks.add(ContextSegment.of(c.seg().label() + " (part " + c.part() + ")", text));
+            picks.add(new Pick(c.seg().label(), c.part(), c.start(), c.end(), scores[i],
+                    text.length() > 160 ? text.substring(0, 160) + "…" : text));
+        }
+        return new Selection(List.copyOf(blocks), false, n, tokens, picks);
+    }
+
+    static Map<String, Integer> termFrequencies(String text) {
+        var tf = new HashMap<String, Integer>();
+        int i = 0;
+        int len = text.length();
+        while (i < len) {
+            while (i < len && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            while (i < len && Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i - start < 2) continue;
+            String term = text.substring(start, i).toLowerCase(Locale.ROOT);
+            if (!STOPWORDS.contains(term)) tf.merge(term, 1, Integer::sum);
+        }
+        return tf;
+    }
+}
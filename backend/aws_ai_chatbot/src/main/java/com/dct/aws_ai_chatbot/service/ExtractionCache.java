@@ -0,0 +1,138 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of extracted attachment text.
+ * Keys are SHA-256 digests of (detected type + bytes), so a sticky file re-uploaded
+ * every turn is parsed/OCR'd once. Bounded by entry count and total chars (LRU),
+ * entries expire after a TTL, and concurrent loads of the same key share one extraction.
+ */
+@Component
+public class ExtractionCache {
+
+    public record Stats(long hits, long misses, long coalesced, long loads, long evictions, int entries, long chars) {}
+
+    private final BoundedLru<String> lru;
+
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public ExtractionCache(
+            @Value("${app.extract.cache.max-entries:256}") int maxEntries,
+            @Value("${app.extract.cache.max-chars:8000000}") long maxChars,
+            @Value("${app.extract.cache.ttl-minutes:60}") long ttlMinutes
+    ) {
+        this.lru = new BoundedLru<>(maxEntries, maxChars, ttlMinutes * 60_000L, String::length);
+    }
+
+    /** Hex SHA-256 over the detected type and the raw bytes. */
+    public static String digest(String type, byte[] bytes) {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            md.update(type.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(bytes);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** Same digest as {@link #digest(String, byte[])}, streamed (for uploads spilled to disk). */
+    public static String digest(String type, InputStream in) throws IOException {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            md.update(type.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            var buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached text for {@code key}, or runs {@code loader} once and caches its result.
+     * Callers racing on the same key wait for the first caller's load, but only until their own
+     * {@code deadlineNanos} ({@link System#nanoTime()} based), then get a TimeoutException. Failed loads are
+     * not cached.
+     */
+    public String get(String key, long deadlineNanos, Callable<String> loader) throws Exception {
+        String cached = lru.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        var mine = new CompletableFuture<String>();
+        var existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing, deadlineNanos);
+        }
+
+        try {
+            // a load may have finished between our lookup and claiming the in-flight slot
+            String text = lru.get(key);
+            if (text != null) {
+                hits.incrementAndGet();
+                mine.complete(text);
+                return text;
+            }
+            misses.incrementAndGet();
+            text = loader.call();
+            loads.incrementAndGet();
+            if (text != null) lru.put(key, text);
+            mine.complete(text);
+            return text;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), coalesced.get(), loads.get(), lru.evictions(), lru.size(),
+                lru.weight());
+    }
+
+    public void clear() {
+        lru.clear();
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private static String await(CompletableFuture<String> f, long deadlineNanos) throws Exception {
+        try {
+            return f.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception ex) throw ex;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ThreadMemoryStore} on local disk: a segmented append-only log.
+ * <ul>
+ *   <li>Every change is one CRC-checked record appended to the active file: a segment (label, text and
+ *       upload digest, empty when none) or a clear, stamped with a store-wide sequence number. On open, all
+ *       files are replayed in sequence order; a torn record left at the tail by a crash is truncated.</li>
+ *   <li>An in-heap index keeps, per thread, only where its live records are. Full files are sealed and
+ *       memory-mapped, so restoring a thread reads a few slices of the page cache. Reads run off the lock.</li>
+ *   <li>With {@code fsync}, a write returns once its record is forced to disk. The force runs off the lock, and
+ *       one force covers every record written before it, so concurrent writers share it (group commit).</li>
+ *   <li>Background compaction rewrites sealed files that are mostly dead (cleared, trimmed or expired
+ *       threads): live records are copied forward with their original sequence numbers, then the file is
+ *       deleted. Clear records are copied too, until nothing older is left for them to hide.</li>
+ * </ul>
+ * Per thread, the oldest segments beyond {@code retainChars} are dropped, and threads not written for
+ * {@code retention} are forgotten.
+ */
+public final class LogThreadMemoryStore implements ThreadMemoryStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LogThreadMemoryStore.class);
+
+    private static final byte SEGMENT = 1;
+    private static final byte CLEAR = 2;
+    private static final int HEADER_BYTES = 8;              // body length + CRC32 of the body
+    private static final int FIXED_BODY_BYTES = 1 + 8 + 8 + 4; // type, seq, time, chars
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    public record Stats(int files, long bytes, long liveBytes, int threads, long compactions) {}
+
+    /** One log file. Sealed files are mapped read-only; the active one is read through its channel. */
+    private static final class LogFile {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+        MappedByteBuffer map;
+
+        LogFile(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        ByteBuffer read(long offset, int length) throws IOException {
+            return map != null ? map.slice((int) offset, length) : readChannel(offset, length);
+        }
+
+        ByteBuffer readChannel(long offset, int length) throws IOException {
+            var buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) throw new EOFException(path.toString());
+            }
+            return buf.flip();
+        }
+
+        void seal() throws IOException {
+            channel.force(false);
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /** Where a live record sits; {@code bytes} includes the header. */
+    private record Ref(LogFile file, long offset, int bytes, long seq, int chars) {}
+
+    /** A record found while replaying the files on open. */
+    private record Scanned(Ref ref, byte type, long time, String threadId) {}
+
+    private static final class Entry {
+        final ArrayList<Ref> segments = new ArrayList<>(); // ascending seq
+        long chars;
+        long lastWriteMillis;
+        boolean trimmed;
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final long retainChars;
+    private final long retentionMillis;
+    private final double minLiveRatio;
+    private final ScheduledExecutorService compactor;
+
+    // guarded by "this"
+    private final TreeMap<Long, LogFile> files = new TreeMap<>();
+    private final HashMap<String, Entry> index = new HashMap<>();
+    private final HashMap<String, Ref> tombstones = new HashMap<>();
+    private LogFile active;
+    private long nextSeq = 1;
+    private long compactions;
+
+    // guarded by syncLock: every record up to this seq is on disk
+    private final Object syncLock = new Object();
+    private long syncedSeq;
+
+    public LogThreadMemoryStore(Path dir, long segmentBytes, boolean fsync, long retainChars,
+                                Duration retention, long compactIntervalSeconds, double minLiveRatio) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.min(Integer.MAX_VALUE, Math.max(4096, segmentBytes));
+        this.fsync = fsync;
+        this.retainChars = retainChars;
+        this.retentionMillis = retention.toMillis();
+        this.minLiveRatio = minLiveRatio;
+        Files.createDirectories(dir);
+        synchronized (this) {
+            recover();
+        }
+        if (compactIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "memory-log-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalSeconds, compactIntervalSeconds,
+                    TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Only the index lookup holds the lock: sealed records are sliced from their mapping under it, and the
+     * page faults and active-file reads happen after.
+     */
+    @Override
+    public Stored load(String threadId) {
+        while (true) {
+            List<Ref> refs;
+            ByteBuffer[] mapped;
+            boolean trimmed;
+            synchronized (this) {
+                var e = index.get(threadId);
+                if (e == null) return null;
+                refs = List.copyOf(e.segments);
+                trimmed = e.trimmed;
+                mapped = new ByteBuffer[refs.size()];
+                for (int i = 0; i < mapped.length; i++) {
+                    var ref = refs.get(i);
+                    var map = ref.file().map;
+                    if (map != null) mapped[i] = map.slice((int) ref.offset(), ref.bytes());
+                }
+            }
+            Ref ref = null;
+            try {
+                var segments = new ArrayList<ThreadMemoryService.Segment>(refs.size());
+                for (int i = 0; i < mapped.length; i++) {
+                    ref = refs.get(i);
+                    var body = mapped[i] != null ? mapped[i] : ref.file().readChannel(ref.offset(), ref.bytes());
+                    body.position(HEADER_BYTES + FIXED_BODY_BYTES);
+                    skip(body); // thread id
+                    String label = str(body);
+                    String text = str(body);
+                    String digest = str(body);
+                    segments.add(new ThreadMemoryService.Segment(label, text, digest.isEmpty() ? null : digest));
+                }
+                return new Stored(segments, trimmed);
+            } catch (ClosedChannelException ex) {
+                synchronized (this) {
+                    if (files.get(ref.file().id) == ref.file()) throw new UncheckedIOException(ex); // store closed
+                }
+                // the active file was sealed and compacted meanwhile; its records moved, so look them up again
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public void append(String threadId, ThreadMemoryService.Segment segment) {
+        long seq;
+        synchronized (this) {
+            seq = writeSegment(threadId, segment);
+        }
+        sync(seq);
+    }
+
+    @Override
+    public void clear(String threadId) {
+        long seq;
+        synchronized (this) {
+            if (!index.containsKey(threadId)) return; // anything older on disk is already dead
+            seq = write(CLEAR, threadId, 0);
+        }
+        sync(seq);
+    }
+
+    /** Same records as the default, under one lock hold so no reader sees the thread half rewritten; one force. */
+    @Override
+    public void replace(String threadId, Stored stored) {
+        long seq;
+        synchronized (this) {
+            seq = index.containsKey(threadId) ? write(CLEAR, threadId, 0) : 0;
+            for (var seg : stored.segments()) seq = writeSegment(threadId, seg);
+        }
+        sync(seq);
+    }
+
+    /** Rewrites every sealed file whose live share fell under {@code min-live-ratio}, one file per lock hold. */
+    public void compact() {
+        List<Long> candidates = new ArrayList<>();
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+            for (var f : files.values()) {
+                if (f != active && f.liveBytes < f.size * minLiveRatio) candidates.add(f.id);
+            }
+        }
+        for (long id : candidates) {
+            synchronized (this) {
+                var f = files.get(id);
+                if (f == null || f == active) continue;
+                try {
+                    rewrite(f);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    public synchronized Stats stats() {
+        long bytes = 0;
+        long live = 0;
+        for (var f : files.values()) {
+            bytes += f.size;
+            live += f.liveBytes;
+        }
+        return new Stats(files.size(), bytes, live, index.size(), compactions);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (compactor != null) compactor.shutdownNow();
+        for (var f : files.values()) {
+            if (f == active) f.channel.force(false);
+            f.channel.close();
+        }
+    }
+
+    // ----------------------------
+    // writing
+    // ----------------------------
+
+    private long writeSegment(String threadId, ThreadMemoryService.Segment segment) {
+        String digest = segment.digest() == null ? "" : segment.digest();
+        return write(SEGMENT, threadId, segment.chars(), segment.label(), segment.text(), digest);
+    }
+
+    /** Appends and indexes one record; returns its seq for {@link #sync}. */
+    private long write(byte type, String threadId, int chars, String... fields) {
+        long seq = nextSeq++;
+        long now = System.currentTimeMillis();
+        try {
+            var ref = append(encode(type, seq, now, chars, threadId, fields), seq, chars);
+            apply(type, threadId, ref, now);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return seq;
+    }
+
+    /**
+     * With {@code fsync}, waits until record {@code seq} is on disk. Called off the store lock: one caller
+     * forces the active file for everything written so far while the others queue on {@code syncLock}, and
+     * most of them then find their record already covered. Older files were forced when they were sealed.
+     */
+    private void sync(long seq) {
+        if (!fsync || seq == 0) return;
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) return;
+            LogFile f;
+            long upTo;
+            synchronized (this) {
+                f = active;
+                upTo = nextSeq - 1;
+            }
+            try {
+                f.channel.force(false);
+            } catch (ClosedChannelException e) {
+                // sealed (and so forced) and compacted meanwhile
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            syncedSeq = upTo;
+        }
+    }
+
+    private static ByteBuffer encode(byte type, long seq, long time, int chars, String threadId, String... fields) {
+        var parts = new byte[fields.length + 1][];
+        parts[0] = threadId.getBytes(StandardCharsets.UTF_8);
+        int body = FIXED_BODY_BYTES + 4 + parts[0].length;
+        for (int i = 0; i < fields.length; i++) {
+            parts[i + 1] = fields[i].getBytes(StandardCharsets.UTF_8);
+            body += 4 + parts[i + 1].length;
+        }
+        var buf = ByteBuffer.allocate(HEADER_BYTES + body).position(HEADER_BYTES);
+        buf.put(type).putLong(seq).putLong(time).putInt(chars);
+        for (var p : parts) buf.putInt(p.length).put(p);
+        var crc = new CRC32();
+        crc.update(buf.array(), HEADER_BYTES, body);
+        buf.putInt(0, body).putInt(4, (int) crc.getValue());
+        return buf.flip();
+    }
+
+    /** Appends one encoded record (header included) to the active file, rolling to a new file when full; not forced. */
+    private Ref append(ByteBuffer record, long seq, int chars) throws IOException {
+        if (active == null || active.size >= segmentBytes) roll();
+        long offset = active.size;
+        int bytes = record.remaining();
+        while (record.hasRemaining()) active.channel.write(record, offset + record.position());
+        active.size += bytes;
+        return new Ref(active, offset, bytes, seq, chars);
+    }
+
+    private void roll() throws IOException {
+        if (active != null) active.seal();
+        long id = files.isEmpty() ? 1 : files.lastKey() + 1;
+        var path = dir.resolve("%020d.log".formatted(id));
+        active = new LogFile(id, path, FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        files.put(id, active);
+    }
+
+    // ----------------------------
+    // index
+    // ----------------------------
+
+    /** Applies one record to the index, in sequence order; the same rules run live and on replay. */
+    private void apply(byte type, String threadId, Ref ref, long time) {
+        ref.file().liveBytes += ref.bytes();
+        if (type == CLEAR) {
+            drop(index.remove(threadId));
+            var previous = tombstones.put(threadId, ref);
+            if (previous != null) dead(previous);
+            return;
+        }
+        var e = index.get(threadId);
+        if (e != null && time - e.lastWriteMillis > retentionMillis) {
+            drop(index.remove(threadId)); // had expired before this write
+            e = null;
+        }
+        if (e == null) {
+            e = new Entry();
+            index.put(threadId, e);
+        }
+        e.lastWriteMillis = Math.max(e.lastWriteMillis, time);
+        e.segments.add(ref);
+        e.chars += ref.chars();
+        while (e.chars > retainChars && e.segments.size() > 1) {
+            var head = e.segments.remove(0);
+            e.chars -= head.chars();
+            dead(head);
+            e.trimmed = true;
+        }
+    }
+
+    private void expire(long now) {
+        for (var it = index.values().iterator(); it.hasNext(); ) {
+            var e = it.next();
+            if (now - e.lastWriteMillis > retentionMillis) {
+                it.remove();
+                drop(e);
+            }
+        }
+    }
+
+    private static void drop(Entry e) {
+        if (e == null) return;
+        e.segments.forEach(LogThreadMemoryStore::dead);
+    }
+
+    private static void dead(Ref ref) {
+        ref.file().liveBytes -= ref.bytes();
+    }
+
+    // ----------------------------
+    // compaction
+    // ----------------------------
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Thread memory log compaction failed: {}", e.toString());
+        }
+    }
+
+    /** Copies the live records of {@code f} to the active file (same seq, so replay order holds) and deletes it. */
+    private void rewrite(LogFile f) throws IOException {
+        boolean oldest = f.id == files.firstKey();
+        long before = f.size;
+        for (var e : index.values()) {
+            for (int i = 0; i < e.segments.size(); i++) {
+                if (e.segments.get(i).file() == f) e.segments.set(i, copy(e.segments.get(i)));
+            }
+        }
+        for (var it = tombstones.entrySet().iterator(); it.hasNext(); ) {
+            var t = it.next();
+            if (t.getValue().file() != f) continue;
+            if (oldest) it.remove(); // nothing older is left for it to hide
+            else t.setValue(copy(t.getValue()));
+        }
+        if (fsync) active.channel.force(false); // the copies are on disk before the originals go
+        files.remove(f.id);
+        f.channel.close();
+        Files.deleteIfExists(f.path);
+        compactions++;
+        log.debug("Compacted thread memory log {}: {} bytes, {} still live", f.path.getFileName(), before, f.liveBytes);
+    }
+
+    private Ref copy(Ref r) throws IOException {
+        var moved = append(r.file().read(r.offset(), r.bytes()), r.seq(), r.chars());
+        dead(r);
+        moved.file().liveBytes += moved.bytes();
+        return moved;
+    }
+
+    // ----------------------------
+    // recovery
+    // ----------------------------
+
+    private void recover() throws IOException {
+        var paths = new ArrayList<Path>();
+        try (var list = Files.list(dir)) {
+            list.filter(p -> p.getFileName().toString().matches("\\d{20}\\.log")).sorted().forEach(paths::add);
+        }
+        var scanned = new ArrayList<Scanned>();
+        for (int i = 0; i < paths.size(); i++) {
+            var path = paths.get(i);
+            long id = Long.parseLong(path.getFileName().toString().substring(0, 20));
+            var f = new LogFile(id, path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            long length = f.channel.size();
+            long end = scan(f, length, scanned);
+            boolean last = i == paths.size() - 1;
+            if (end < length) {
+                if (last) {
+                    log.warn("Truncating {} bytes of torn records at the end of {}", length - end, path);
+                    f.channel.truncate(end);
+                    length = end;
+                } else {
+                    log.warn("Corrupt record in {} at offset {}; ignoring the rest of the file", path, end);
+                }
+            }
+            f.size = length;
+            files.put(id, f);
+        }
+
+        scanned.sort(Comparator.comparingLong(s -> s.ref().seq()));
+        long lastSeq = 0;
+        for (var s : scanned) {
+            if (s.ref().seq() == lastSeq) continue; // copy left behind by an interrupted compaction
+            lastSeq = s.ref().seq();
+            apply(s.type(), s.threadId(), s.ref(), s.time());
+        }
+        nextSeq = lastSeq + 1;
+        expire(System.currentTimeMillis());
+
+        if (!files.isEmpty() && files.lastEntry().getValue().size < segmentBytes) active = files.lastEntry().getValue();
+        for (var f : files.values()) {
+            if (f != active) f.seal();
+        }
+        if (!files.isEmpty()) {
+            log.info("Thread memory log: {} files, {} threads restored from {}", files.size(), index.size(), dir);
+        }
+    }
+
+    /** Reads records from the start of {@code f}; returns the offset just past the last intact one. */
+    private static long scan(LogFile f, long length, List<Scanned> out) throws IOException {
+        long pos = 0;
+        while (pos + HEADER_BYTES <= length) {
+            var header = f.read(pos, HEADER_BYTES);
+            int body = header.getInt(0);
+            int crc = header.getInt(4);
+            if (body < FIXED_BODY_BYTES || body > MAX_RECORD_BYTES || pos + HEADER_BYTES + body > length) break;
+            var buf = f.read(pos + HEADER_BYTES, body);
+            var check = new CRC32();
+            check.update(buf.duplicate());
+            if ((int) check.getValue() != crc) break;
+            try {
+                byte type = buf.get();
+                long seq = buf.getLong();
+                long time = buf.getLong();
+                int chars = buf.getInt();
+                String threadId = str(buf);
+                if (type < SEGMENT || type > CLEAR) break;
+                out.add(new Scanned(new Ref(f, pos, HEADER_BYTES + body, seq, chars), type, time, threadId));
+            } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+                break;
+            }
+            pos += HEADER_BYTES + body;
+        }
+        return pos;
+    }
+
+    private static String str(ByteBuffer buf) {
+        var bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skip(ByteBuffer buf) {
+        int n = buf.getInt();
+        buf.position(buf.position() + n);
+    }
+}
@@ -0,0 +1,399 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Readability-style main-content extraction. Boilerplate containers (navigation, footers, cookie banners,
+ * sidebars) are dropped by tag, role and class/id; the remaining paragraph-like blocks are scored by text
+ * length and commas, the scores flow to their parent and grandparent, and each candidate is discounted by
+ * its link density. The best candidate and its strong siblings are rendered as plain text that keeps
+ * headings ({@code #}), list items ({@code -}), table rows and preformatted blocks.
+ * <p>
+ * Pages without a clear article body (listings, short pages) fall back to the whole cleaned body.
+ */
+public final class MainContent {
+
+    /** Below this much main text the page is treated as having no article body. */
+    private static final int MIN_MAIN_CHARS = 250;
+    /** Paragraphs shorter than this (normalized) are never treated as repeated boilerplate. */
+    private static final int MIN_REPEATED_CHARS = 60;
+
+    private static final String BOILERPLATE_TAGS =
+            "script, style, noscript, template, svg, iframe, canvas, form, button, input, select, textarea, "
+                    + "nav, footer, aside, dialog, menu";
+    private static final String BOILERPLATE_ROLES =
+            "[role=navigation], [role=banner], [role=contentinfo], [role=complementary], [role=dialog], "
+                    + "[role=alertdialog], [role=search], [aria-hidden=true], [hidden]";
+    private static final Pattern UNLIKELY = Pattern.compile(
+            "(?i)ad-|adv|banner|breadcrumb|comment|consent|cookie|disqus|footer|gdpr|masthead|menu|modal|"
+                    + "navbar|newsletter|pager|pagination|popup|promo|related|share|sidebar|signup|social|"
+                    + "sponsor|subscribe|toolbar|widget");
+    private static final Pattern LIKELY = Pattern.compile("(?i)article|body|content|entry|main|post|story|text");
+    private static final Pattern HIDDEN_STYLE = Pattern.compile("(?i)display\\s*:\\s*none|visibility\\s*:\\s*hidden");
+
+    private static final Set<String> BLOCKS = Set.of(
+            "p", "div", "section", "article", "main", "header", "blockquote", "figure", "figcaption",
+            "table", "thead", "tbody", "tfoot", "dl", "dd", "dt", "address", "details", "summary", "hr");
+    private static final String SCORED = "p, pre, td, blockquote, li, div";
+
+    private record Candidate(Element top, Map<Element, Double> scores) {}
+
+    private MainContent() {}
+
+    /** Main content of an HTML page as structured plain text, at most {@code maxChars} long. */
+    public static String extract(String html, String baseUri, int maxChars) {
+        Document doc = Jsoup.parse(html, baseUri == null ? "" : baseUri);
+        Element body = doc.body();
+        removeBoilerplate(body);
+
+        var out = new StringBuilder(Math.min(maxChars, 8192));
+        Candidate candidate = topCandidate(body);
+        if (candidate != null) {
+            for (var el : withSiblings(candidate)) {
+                cleanConditionally(el);
+                render(el, out, 0);
+                block(out, 0);
+            }
+        }
+        if (visibleChars(out) < MIN_MAIN_CHARS) {
+            out.setLength(0);
+            render(body, out, 0);
+        }
+
+        String text = tidy(out);
+        // the <title> only when the content doesn't open with a heading of its own
+        String title = doc.title().strip();
+        if (!title.isEmpty() && !text.startsWith("#")) text = "# " + title + "\n\n" + text;
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    /**
+     * Drops paragraphs of {@code text} (blocks separated by blank lines) that are already in {@code seen},
+     * e.g. the same disclaimer on every page of a site, and adds the remaining ones. Headings and short
+     * paragraphs are always kept.
+     */
+    public static String dropRepeated(String text, Set<Long> seen) {
+        if (text == null || text.isEmpty()) return text;
+        var out = new StringBuilder(text.length());
+        for (String para : text.split("\n{2,}")) {
+            long fp = fingerprint(para);
+            if (fp != 0 && !seen.add(fp)) continue;
+            if (!out.isEmpty()) out.append("\n\n");
+            out.append(para);
+        }
+        return out.toString();
+    }
+
+    /** Fingerprints of the paragraphs of {@code text} that {@link #dropRepeated} would match against. */
+    public static long[] fingerprints(String text) {
+        if (text == null) return new long[0];
+        var paras = text.split("\n{2,}");
+        var out = new long[paras.length];
+        int n = 0;
+        for (String para : paras) {
+            long fp = fingerprint(para);
+            if (fp != 0) out[n++] = fp;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // ----------------------------
+    // scoring
+    // ----------------------------
+
+    private static void removeBoilerplate(Element body) {
+        body.select(BOILERPLATE_TAGS).remove();
+        body.select(BOILERPLATE_ROLES).remove();
+        var drop = new ArrayList<Element>();
+        for (var el : body.getAllElements()) {
+            if (el == body) continue;
+            String style = el.attr("style");
+            if (!style.isEmpty() && HIDDEN_STYLE.matcher(style).find()) {
+                drop.add(el);
+                continue;
+            }
+            String tag = el.normalName();
+            if (tag.equals("article") || tag.equals("main") || tag.equals("a")) continue;
+            String hint = el.className() + " " + el.id();
+            if (hint.isBlank()) continue;
+            if (UNLIKELY.matcher(hint).find() && !LIKELY.matcher(hint).find()) drop.add(el);
+        }
+        for (var el : drop) el.remove();
+    }
+
+    private static Candidate topCandidate(Element body) {
+        Map<Element, Double> scores = new IdentityHashMap<>();
+        for (var el : body.select(SCORED)) {
+            if (el.normalName().equals("div") && hasBlockChild(el)) continue;
+            String text = el.text();
+            if (text.length() < 25) continue;
+
+            double score = 1 + count(text, ',') + Math.min(text.length() / 100, 3);
+            Element parent = el.parent();
+            if (parent == null || parent == body.parent()) continue;
+            scores.merge(parent, score, Double::sum);
+            Element grand = parent.parent();
+            if (grand != null && grand != body.parent()) scores.merge(grand, score / 2, Double::sum);
+        }
+
+        Element top = null;
+        double best = 0;
+        for (var e : scores.entrySet()) {
+            double s = (e.getValue() + bias(e.getKey())) * (1 - linkDensity(e.getKey()));
+            e.setValue(s);
+            if (s > best) {
+                best = s;
+                top = e.getKey();
+            }
+        }
+        if (top == null) return null;
+        // a lone paragraph winning means the article is its parent
+        if (top.normalName().equals("p") && top.parent() != null) top = top.parent();
+        return new Candidate(top, scores);
+    }
+
+    /** The candidate plus siblings that score close to it or read like article paragraphs, in document order. */
+    private static List<Element> withSiblings(Candidate candidate) {
+        Element top = candidate.top();
+        var scores = candidate.scores();
+        Element parent = top.parent();
+        if (parent == null) return List.of(top);
+
+        double topScore = scores.getOrDefault(top, 0.0);
+        double threshold = Math.max(10, topScore * 0.2);
+        var kept = new ArrayList<Element>();
+        for (var sib : parent.children()) {
+            if (sib == top) {
+                kept.add(sib);
+                continue;
+            }
+            Double s = scores.get(sib);
+            if (s != null && s >= threshold) {
+                kept.add(sib);
+            } else if (sib.normalName().equals("p") || sib.normalName().matches("h[1-6]")) {
+                String text = sib.text();
+                double links = linkDensity(sib);
+                if (text.length() > 80 && links < 0.25 || sib.normalName().charAt(0) == 'h' && isAdjacent(sib, top)) {
+                    kept.add(sib);
+                }
+            }
+        }
+        return kept;
+    }
+
+    /** Inside the chosen content: drop link lists and tables of links that survived the class/id filter. */
+    private static void cleanConditionally(Element root) {
+        var drop = new ArrayList<Element>();
+        for (var el : root.select("ul, ol, div, section, table")) {
+            if (el == root || !el.select("pre").isEmpty()) continue;
+            String text = el.text();
+            double links = linkDensity(el);
+            if (links > 0.5 && text.length() < 1000 || text.isBlank() && el.select("img").isEmpty()) drop.add(el);
+        }
+        for (var el : drop) el.remove();
+    }
+
+    private static double bias(Element el) {
+        double b = switch (el.normalName()) {
+            case "article", "main" -> 10;
+            case "div" -> 5;
+            case "pre", "td", "blockquote", "section" -> 3;
+            case "ol", "ul", "dl", "dd", "dt", "li", "address" -> -3;
+            case "h1", "h2", "h3", "h4", "h5", "h6", "th", "header" -> -5;
+            default -> 0;
+        };
+        String hint = el.className() + " " + el.id();
+        if (LIKELY.matcher(hint).find()) b += 25;
+        if (UNLIKELY.matcher(hint).find()) b -= 25;
+        return b;
+    }
+
+    private static double linkDensity(Element el) {
+        int total = el.text().length();
+        if (total == 0) return 0;
+        int links = 0;
+        for (var a : el.select("a")) links += a.text().length();
+        return Math.min(1.0, (double) links / total);
+    }
+
+    private static boolean hasBlockChild(Element el) {
+        for (var child : el.children()) {
+            String tag = child.normalName();
+            if (BLOCKS.contains(tag) || tag.equals("pre") || tag.equals("ul") || tag.equals("ol")) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAdjacent(Element a, Element b) {
+        return a.nextElementSibling() == b || a.previousElementSibling() == b;
+    }
+
+    // ----------------------------
+    // rendering
+    // ----------------------------
+
+    private static void render(Element el, StringBuilder out, int listDepth) {
+        for (Node node : el.childNodes()) {
+            if (node instanceof TextNode t) {
+                inline(t.text(), out);
+            } else if (node instanceof Element e) {
+                String tag = e.normalName();
+                switch (tag) {
+                    case "h1", "h2", "h3", "h4", "h5", "h6" -> {
+                        String text = e.text().strip();
+                        if (text.isEmpty()) break;
+                        block(out, listDepth);
+                        out.append("#".repeat(tag.charAt(1) - '0')).append(' ').append(text);
+                        block(out, listDepth);
+                    }
+                    case "pre" -> {
+                        block(out, listDepth);
+                        out.append(e.wholeText().strip());
+                        block(out, listDepth);
+                    }
+                    case "ul", "ol" -> {
+                        block(out, listDepth);
+                        render(e, out, listDepth + 1);
+                        block(out, listDepth);
+                    }
+                    case "li" -> {
+                        line(out);
+                        out.append("  ".repeat(Math.max(0, listDepth - 1))).append("- ");
+                        render(e, out, Math.max(1, listDepth));
+                        line(out);
+                    }
+                    case "tr" -> {
+                        line(out);
+                        render(e, out, listDepth);
+                        line(out);
+                    }
+                    case "td", "th" -> {
+                        char last = out.isEmpty() ? '\n' : out.charAt(out.length() - 1);
+                        if (last != '\n') out.append(" | ");
+                        render(e, out, listDepth);
+                    }
+                    case "br" -> line(out);
+                    case "img" -> {
+                        String alt = e.attr("alt").strip();
+                        if (!alt.isEmpty()) inline(alt, out);
+                    }
+                    default -> {
+                        if (BLOCKS.contains(tag)) {
+                            block(out, listDepth);
+                            render(e, out, listDepth);
+                            block(out, listDepth);
+                        } else {
+                            render(e, out, listDepth);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Appends text with whitespace collapsed to single spaces. */
+    private static void inline(String text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch) || ch == '\u00A0') {
+                if (!out.isEmpty()) {
+                    char last = out.charAt(out.length() - 1);
+                    if (last != ' ' && last != '\n') out.append(' ');
+                }
+            } else {
+                out.append(ch);
+            }
+        }
+    }
+
+    /** Ends the current paragraph (a line break inside list items). */
+    private static void block(StringBuilder out, int listDepth) {
+        if (listDepth > 0) {
+            line(out);
+            return;
+        }
+        trimTrailingSpaces(out);
+        if (out.isEmpty()) return;
+        if (out.charAt(out.length() - 1) != '\n') out.append('\n');
+        if (out.length() < 2 || out.charAt(out.length() - 2) != '\n') out.append('\n');
+    }
+
+    private static void line(StringBuilder out) {
+        trimTrailingSpaces(out);
+        if (!out.isEmpty() && out.charAt(out.length() - 1) != '\n') out.append('\n');
+    }
+
+    private static void trimTrailingSpaces(StringBuilder out) {
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') end--;
+        out.setLength(end);
+    }
+
+    /** Strips the result and collapses runs of blank lines (left by dropped or empty blocks). */
+    private static String tidy(StringBuilder out) {
+        var sb = new StringBuilder(out.length());
+        int newlines = 0;
+        for (int i = 0; i < out.length(); i++) {
+            char ch = out.charAt(i);
+            if (ch == '\n') {
+                if (++newlines > 2) continue;
+                trimTrailingSpaces(sb);
+            } else {
+                newlines = 0;
+            }
+            sb.append(ch);
+        }
+        return sb.toString().strip();
+    }
+
+    private static int visibleChars(CharSequence s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) n++;
+        }
+        return n;
+    }
+
+    private static int count(String s, char c) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == c) n++;
+        }
+        return n;
+    }
+
+    /** 64-bit FNV-1a of the lower-cased, whitespace-collapsed paragraph; 0 for headings and short paragraphs. */
+    private static long fingerprint(String para) {
+        String p = para.strip();
+        if (p.startsWith("#")) return 0;
+        long h = 0xcbf29ce484222325L;
+        int chars = 0;
+        boolean space = false;
+        for (int i = 0; i < p.length(); i++) {
+            char ch = p.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                h = (h ^ ' ') * 0x100000001b3L;
+                space = false;
+            }
+            h = (h ^ Character.toLowerCase(ch)) * 0x100000001b3L;
+            chars++;
+        }
+        return chars < MIN_REPEATED_CHARS ? 0 : (h == 0 ? 1 : h);
+    }
+}
@@ -0,0 +1,195 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts thread memory off the request path. When an append leaves a thread above the watermark, its
+ * older segments (never the newest one) are sent to the model for a summary that keeps every source label,
+ * and swapped for one summary segment if the thread hasn't changed in the meantime. The hard per-thread
+ * cap in {@link ThreadMemoryService} stays as the backstop while a summary is pending.
+ * <p>
+ * One pending summary per thread; at most {@code max-in-flight} at once; a thread is summarized at most
+ * once per {@code min-interval-seconds}.
+ */
+@Service
+public class MemorySummarizer {
+
+    private static final Logger log = LoggerFactory.getLogger(MemorySummarizer.class);
+
+    private static final String SYSTEM = """
+            You compact reference material from an ongoing chat so it can be kept in a small context.
+            The material is a series of sources, each starting with a line "=== <label> ===" (a file name, URL or
+            earlier summary). Summarize each source under its original "=== <label> ===" line, in the same order.
+            Keep every label exactly as written. Keep names, numbers, dates, definitions, decisions and anything a
+            later question could refer to; drop boilerplate and repetition. Output only the summaries.""";
+
+    private static final long RETRY_BUSY_MILLIS = 1_000;
+    private static final String ADMISSION_KEY = "memory-summarizer";
+
+    private final ThreadMemoryService memory;
+    private final ClaudeService claude;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final long targetChars;
+    private final int maxTokens;
+    private final long minIntervalMillis;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> lastRun = new ConcurrentHashMap<>();
+
+    public MemorySummarizer(
+            ThreadMemoryService memory,
+            ClaudeService claude,
+            MeterRegistry registry,
+            @Value("${app.memory.summarize.enabled:true}") boolean enabled,
+            @Value("${app.memory.max-chars-per-thread:120000}") long maxCharsPerThread,
+            @Value("${app.memory.summarize.watermark-ratio:0.75}") double watermarkRatio,
+            @Value("${app.memory.summarize.target-ratio:0.4}") double targetRatio,
+            @Value("${app.memory.summarize.max-tokens:2000}") int maxTokens,
+            @Value("${app.memory.summarize.max-in-flight:2}") int maxInFlight,
+            @Value("${app.memory.summarize.min-interval-seconds:60}") long minIntervalSeconds
+    ) {
+        this.memory = memory;
+        this.claude = claude;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.targetChars = (long) (maxCharsPerThread * targetRatio);
+        this.maxTokens = maxTokens;
+        this.minIntervalMillis = TimeUnit.SECONDS.toMillis(minIntervalSeconds);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "memory-summarizer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) memory.onOverWatermark((long) (maxCharsPerThread * watermarkRatio), this::request);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /** Queues a summary for the thread unless one is already pending; returns immediately. */
+    public void request(String threadId) {
+        if (!enabled || !pending.add(threadId)) return;
+        long wait = lastRun.getOrDefault(threadId, 0L) + minIntervalMillis - System.currentTimeMillis();
+        scheduler.schedule(() -> start(threadId), Math.max(0, wait), TimeUnit.MILLISECONDS);
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private void start(String threadId) {
+        if (!inFlight.tryAcquire()) {
+            scheduler.schedule(() -> start(threadId), RETRY_BUSY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        List<ThreadMemoryService.Segment> older;
+        try {
+            older = olderSegments(memory.segments(threadId));
+        } catch (RuntimeException e) {
+            finish(threadId, "failed");
+            throw e;
+        }
+        if (older.isEmpty()) {
+            finish(threadId, "skipped");
+            return;
+        }
+
+        var prompt = new StringBuilder();
+        var labels = new LinkedHashSet<String>();
+        for (var seg : older) {
+            if (!prompt.isEmpty()) prompt.append("\n\n");
+            prompt.append("=== ").append(seg.label()).append(" ===\n").append(seg.text());
+            labels.add(seg.label());
+        }
+        var req = new ChatRequest(List.of(new Message("user", prompt.toString())), SYSTEM, maxTokens, 0.2, null);
+        CompletableFuture<String> call;
+        try {
+            // own admission queue: a pending summary never sits ahead of this thread's next turn
+            call = claude.chatOnceAsync(new WrappedRequest(req, null, null), ADMISSION_KEY);
+        } catch (RuntimeException e) {
+            log.warn("Summarizing memory of thread {} failed: {}", threadId, e.toString());
+            finish(threadId, "failed");
+            return;
+        }
+        call.whenComplete((summary, ex) -> {
+            // chatOnceAsync reports Bedrock failures as ERROR_PREFIX text; that must never replace the memory
+            boolean failed = summary != null && summary.startsWith(ClaudeService.ERROR_PREFIX);
+            if (ex != null || failed || summary == null || summary.isBlank()) {
+                if (ex != null || failed) {
+                    log.warn("Summarizing memory of thread {} failed: {}", threadId, ex != null ? ex.toString() : summary);
+                }
+                finish(threadId, "failed");
+                return;
+            }
+            var seg = new ThreadMemoryService.Segment(summaryLabel(labels), summary.strip());
+            finish(threadId, memory.replacePrefix(threadId, older, seg) ? "ok" : "stale");
+        });
+    }
+
+    /** Oldest segments until what's left fits {@code targetChars}; the newest segment always stays verbatim. */
+    private List<ThreadMemoryService.Segment> olderSegments(List<ThreadMemoryService.Segment> segments) {
+        long remaining = 0;
+        for (var seg : segments) remaining += seg.chars();
+        var older = new ArrayList<ThreadMemoryService.Segment>();
+        for (int i = 0; i < segments.size() - 1 && remaining > targetChars; i++) {
+            older.add(segments.get(i));
+            remaining -= segments.get(i).chars();
+        }
+        return older;
+    }
+
+    /** "summary: a.pdf, https://..., notes.txt" — the summary's own label keeps what it covers findable. */
+    private static String summaryLabel(Set<String> labels) {
+        var sb = new StringBuilder("summary: ");
+        int n = 0;
+        for (var label : labels) {
+            String l = label.startsWith("summary: ") ? label.substring(9) : label;
+            if (sb.length() + l.length() > 400) {
+                sb.append(n == 0 ? "" : ", ").append("+").append(labels.size() - n).append(" more");
+                break;
+            }
+            sb.append(n++ == 0 ? "" : ", ").append(l);
+        }
+        return sb.toString();
+    }
+
+    private void finish(String threadId, String outcome) {
+        inFlight.release();
+        long now = System.currentTimeMillis();
+        lastRun.put(threadId, now);
+        scheduler.schedule(() -> lastRun.remove(threadId, now), minIntervalMillis, TimeUnit.MILLISECONDS);
+        pending.remove(threadId);
+        Counter.builder("memory.summaries")
+                .description("Background summarizations of thread memory")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+}
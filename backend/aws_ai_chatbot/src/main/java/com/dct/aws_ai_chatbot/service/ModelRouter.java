@@ -0,0 +1,244 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the Bedrock model for each call.
+ * <ul>
+ *   <li>Classification: a turn with no per-turn context (files, links, retrieved memory), a planned input of
+ *       at most {@code max-fast-input-tokens} and a requested {@code maxTokens} of at most
+ *       {@code max-fast-output-tokens} goes to the fast model; everything else to the large one. With no fast
+ *       model configured all calls go to {@code app.bedrock.model-id}.</li>
+ *   <li>Health: each model keeps its last {@code window} outcomes (throttles count as errors; rejected 4xx
+ *       requests and cancelled calls don't count) and an EWMA of stream time to first token. Whole-call
+ *       duration is not a signal: it depends on output length.</li>
+ *   <li>Failover: a model whose error rate or TTFT passes its threshold is degraded for {@code cooldown-ms};
+ *       its calls go to the other model meanwhile, then it gets a fresh window.</li>
+ * </ul>
+ */
+@Component
+public class ModelRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelRouter.class);
+
+    public enum Tier { FAST, LARGE }
+
+    /** Which tier a request belongs to and why. */
+    public record Route(Tier tier, String reason) {}
+
+    public record ModelStats(String model, int samples, double errorRate, double ttftMillis, boolean degraded) {}
+
+    public record Stats(boolean enabled, long fast, long large, long failovers, List<ModelStats> models) {}
+
+    private static final double TTFT_ALPHA = 0.2;
+
+    private final MeterRegistry registry;
+    private final String largeModel;
+    private final String fastModel;
+    private final int maxFastInputTokens;
+    private final int maxFastOutputTokens;
+    private final int window;
+    private final int minSamples;
+    private final double maxErrorRate;
+    private final long maxTtftNanos;
+    private final long cooldownNanos;
+
+    private final Map<String, Health> health = new LinkedHashMap<>();
+    private long fastRoutes;
+    private long largeRoutes;
+    private long failovers;
+
+    public ModelRouter(
+            MeterRegistry registry,
+            @Value("${app.bedrock.model-id}") String largeModel,
+            @Value("${app.bedrock.routing.fast-model-id:}") String fastModel,
+            @Value("${app.bedrock.routing.max-fast-input-tokens:4000}") int maxFastInputTokens,
+            @Value("${app.bedrock.routing.max-fast-output-tokens:1024}") int maxFastOutputTokens,
+            @Value("${app.bedrock.routing.window:50}") int window,
+            @Value("${app.bedrock.routing.min-samples:10}") int minSamples,
+            @Value("${app.bedrock.routing.max-error-rate:0.3}") double maxErrorRate,
+            @Value("${app.bedrock.routing.max-ttft-ms:8000}") long maxTtftMillis,
+            @Value("${app.bedrock.routing.cooldown-ms:30000}") long cooldownMillis
+    ) {
+        this.registry = registry;
+        this.largeModel = largeModel;
+        this.fastModel = fastModel == null || fastModel.isBlank() || fastModel.equals(largeModel) ? null : fastModel.strip();
+        this.maxFastInputTokens = maxFastInputTokens;
+        this.maxFastOutputTokens = maxFastOutputTokens;
+        this.window = Math.max(1, window);
+        this.minSamples = Math.max(1, Math.min(minSamples, this.window));
+        this.maxErrorRate = maxErrorRate;
+        this.maxTtftNanos = TimeUnit.MILLISECONDS.toNanos(maxTtftMillis);
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+
+        register(largeModel);
+        if (this.fastModel != null) register(this.fastModel);
+    }
+
+    public boolean enabled() {
+        return fastModel != null;
+    }
+
+    /** Tier for a request after budget planning; {@code maxTokens} is what the client asked for, if anything. */
+    public Route classify(PromptBudgetPlanner.Plan plan) {
+        if (!enabled()) return new Route(Tier.LARGE, "disabled");
+        var wrapped = plan.request();
+        if (!wrapped.turnContext().isEmpty()) return new Route(Tier.LARGE, "attachments");
+        if (plan.estimatedAfter() > maxFastInputTokens) return new Route(Tier.LARGE, "input");
+        Integer maxTokens = wrapped.request().maxTokens();
+        if (maxTokens != null && maxTokens > maxFastOutputTokens) return new Route(Tier.LARGE, "output");
+        return new Route(Tier.FAST, "small");
+    }
+
+    /** Model for one attempt of {@code route}; called again on retries, so a retry can fail over. */
+    public String pick(Route route) {
+        String preferred = route.tier() == Tier.FAST && enabled() ? fastModel : largeModel;
+        String other = preferred.equals(largeModel) ? fastModel : largeModel;
+        String model = preferred;
+        boolean failover = false;
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (other != null && health.get(preferred).degraded(now) && !health.get(other).degraded(now)) {
+                model = other;
+                failover = true;
+                failovers++;
+            }
+            if (model.equals(largeModel)) largeRoutes++;
+            else fastRoutes++;
+        }
+        Counter.builder("bedrock.route")
+                .description("Bedrock calls by the tier they were classified into and the model that served them")
+                .tag("tier", route.tier().name().toLowerCase(Locale.ROOT))
+                .tag("reason", route.reason())
+                .tag("model", model)
+                .tag("failover", String.valueOf(failover))
+                .register(registry)
+                .increment();
+        return model;
+    }
+
+    /**
+     * Outcome of one call on {@code model}. {@code ttftNanos} is the stream's time to first token,
+     * or -1 when there is none (non-streaming calls, failures).
+     */
+    public void record(String model, BedrockAdmission.Outcome outcome, long ttftNanos) {
+        if (outcome == BedrockAdmission.Outcome.CANCELLED || outcome == BedrockAdmission.Outcome.REJECTED) return;
+        String tripped = null;
+        synchronized (this) {
+            var h = health.get(model);
+            if (h == null) return; // not one of ours (e.g. the startup primer)
+            long now = System.nanoTime();
+            if (h.degraded(now)) return; // failover traffic and stragglers don't extend the cooldown
+            h.add(outcome != BedrockAdmission.Outcome.OK, ttftNanos);
+            if (h.count >= minSamples && (h.errorRate() > maxErrorRate || h.ttftEwma > maxTtftNanos)) {
+                tripped = String.format(Locale.ROOT, "error rate %.2f, ttft %.0f ms",
+                        h.errorRate(), h.ttftEwma / 1e6);
+                h.trip(now + cooldownNanos);
+            }
+        }
+        if (tripped != null) {
+            log.warn("Bedrock model {} degraded ({}); routing to the other model for {} ms",
+                    model, tripped, TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+            Counter.builder("bedrock.model.degraded")
+                    .description("Times a model was taken out of rotation for its error rate or latency")
+                    .tag("model", model)
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    public synchronized Stats stats() {
+        long now = System.nanoTime();
+        var models = new ArrayList<ModelStats>();
+        health.forEach((model, h) -> models.add(new ModelStats(model, h.count, h.errorRate(),
+                Double.isNaN(h.ttftEwma) ? -1 : h.ttftEwma / 1e6, h.degraded(now))));
+        return new Stats(enabled(), fastRoutes, largeRoutes, failovers, models);
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private void register(String model) {
+        health.put(model, new Health(window));
+        Gauge.builder("bedrock.model.healthy", this, r -> r.healthy(model) ? 1 : 0)
+                .description("1 while the model takes its own traffic, 0 while it is failed over")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("bedrock.model.error.rate", this, r -> r.errorRate(model))
+                .description("Share of failed calls in the model's rolling window")
+                .tag("model", model)
+                .register(registry);
+    }
+
+    private synchronized boolean healthy(String model) {
+        return !health.get(model).degraded(System.nanoTime());
+    }
+
+    private synchronized double errorRate(String model) {
+        return health.get(model).errorRate();
+    }
+
+    /** Rolling window of outcomes plus TTFT EWMA for one model; guarded by the router's lock. */
+    private static final class Health {
+        private final boolean[] failed;
+        private int next;
+        private int count;
+        private int failures;
+        private double ttftEwma = Double.NaN;
+        private long degradedUntil;
+        private boolean degraded;
+
+        Health(int window) {
+            this.failed = new boolean[window];
+        }
+
+        void add(boolean failure, long ttftNanos) {
+            if (count == failed.length) {
+                if (failed[next]) failures--;
+            } else {
+                count++;
+            }
+            failed[next] = failure;
+            if (failure) failures++;
+            next = (next + 1) % failed.length;
+            if (ttftNanos >= 0) {
+                ttftEwma = Double.isNaN(ttftEwma) ? ttftNanos : ttftEwma + TTFT_ALPHA * (ttftNanos - ttftEwma);
+            }
+        }
+
+        double errorRate() {
+            return count == 0 ? 0 : (double) failures / count;
+        }
+
+        boolean degraded(long now) {
+            if (degraded && now - degradedUntil >= 0) degraded = false;
+            return degraded;
+        }
+
+        /** Out of rotation until {@code until}; it comes back with a clean window. */
+        void trip(long until) {
+            degraded = true;
+            degradedUntil = until;
+            Arrays.fill(failed, false);
+            next = 0;
+            count = 0;
+            failures = 0;
+            ttftEwma = Double.NaN;
+        }
+    }
+}
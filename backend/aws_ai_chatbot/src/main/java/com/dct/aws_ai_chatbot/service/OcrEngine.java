@@ -0,0 +1,10 @@
+package com.dct.aws_ai_chatbot.service;
+
+/**
+ * Turns an image (PNG/JPEG bytes) into its text lines, newline-separated.
+ * {@link TextractOcrService} in production; tests pass a local stand-in to {@link ContentExtractService}.
+ */
+public interface OcrEngine {
+
+    String detectLines(byte[] image);
+}
@@ -0,0 +1,209 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fits a request into the model's input budget before it is sent.
+ * The budget is the context window minus the reserved {@code maxTokens} and a safety margin.
+ * When over, in order: drop the oldest history (keeping a recent window), shrink the context
+ * sections proportionally, drop the rest of the older history, and finally cut the question.
+ */
+@Component
+public class PromptBudgetPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptBudgetPlanner.class);
+
+    /** What the planner did to one request. */
+    public record Plan(WrappedRequest request, int budget, int estimatedBefore, int estimatedAfter,
+                       int droppedMessages, double contextScale, boolean truncatedQuestion) {
+        public boolean modified() {
+            return droppedMessages > 0 || contextScale < 1.0 || truncatedQuestion;
+        }
+    }
+
+    public record Stats(long planned, long trimmed, long droppedMessages, long shrunkContexts, long truncatedQuestions) {}
+
+    static final String TRUNCATED = "\n[truncated to fit the model's input budget]";
+
+    private static final int MESSAGE_OVERHEAD = 8;   // role/framing per message
+    private static final int CONTEXT_OVERHEAD = 40;  // preamble + separators around each context block
+    private static final int DEFAULT_MAX_TOKENS = 4000;
+
+    private final int contextWindow;
+    private final int safetyMargin;
+    private final int minRecentMessages;
+
+    private final AtomicLong planned = new AtomicLong();
+    private final AtomicLong trimmed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong shrunk = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    public PromptBudgetPlanner(
+            @Value("${app.bedrock.context-window-tokens:200000}") int contextWindow,
+            @Value("${app.bedrock.budget-margin-tokens:2000}") int safetyMargin,
+            @Value("${app.bedrock.min-recent-messages:4}") int minRecentMessages
+    ) {
+        this.contextWindow = contextWindow;
+        this.safetyMargin = safetyMargin;
+        this.minRecentMessages = minRecentMessages;
+    }
+
+    /** Input tokens available to a request that reserves {@code maxTokens} for the answer. */
+    public int inputBudget(Integer maxTokens) {
+        int reserve = maxTokens != null ? maxTokens : DEFAULT_MAX_TOKENS;
+        return contextWindow - reserve - safetyMargin;
+    }
+
+    public Plan plan(WrappedRequest wrapped) {
+        var req = wrapped.request();
+        int budget = inputBudget(req.maxTokens());
+        planned.incrementAndGet();
+
+        int fixed = TokenEstimator.estimate(req.system());
+        if (fixed >= budget) {
+            throw new IllegalArgumentException("system prompt (~" + fixed + " tokens) exceeds the input budget of " + budget);
+        }
+
+        var history = req.messages() == null ? List.<Message>of() : req.messages();
+        int[] cost = new int[history.size()];
+        int historyTokens = 0;
+        int lastUser = -1;
+        for (int i = 0; i < history.size(); i++) {
+            var m = history.get(i);
+            if (m.content() == null || m.content().isBlank()) continue; // skipped when sending
+            cost[i] = TokenEstimator.estimate(m.content()) + MESSAGE_OVERHEAD;
+            historyTokens += cost[i];
+            if ("user".equalsIgnoreCase(m.role())) lastUser = i;
+        }
+
+        var stable = wrapped.stableContext();
+        var turn = wrapped.turnContext();
+        int stableTokens = contextTokens(stable);
+        int turnTokens = contextTokens(turn);
+
+        int before = fixed + historyTokens + stableTokens + turnTokens;
+        if (before <= budget) {
+            log.debug("prompt budget ok: ~{} of {} tokens", before, budget);
+            return new Plan(wrapped, budget, before, before, 0, 1.0, false);
+        }
+
+        // 1) oldest history first, keeping the recent window and the question
+        int protectFrom = Math.max(0, history.size() - minRecentMessages);
+        if (lastUser >= 0) protectFrom = Math.min(protectFrom, lastUser);
+        int from = 0;
+        while (from < protectFrom && fixed + historyTokens + stableTokens + turnTokens > budget) {
+            historyTokens -= cost[from++];
+        }
+        from = skipLeadingAssistant(history, from, lastUser, cost);
+        historyTokens = sum(cost, from, history.size());
+
+        // 2) shrink context sections proportionally to whatever room is left
+        double scale = 1.0;
+        int contextTokens = stableTokens + turnTokens;
+        int room = budget - fixed - historyTokens;
+        if (contextTokens > room) {
+            // 3) if context would be squeezed below half, give it the rest of the older history too
+            if (room < contextTokens / 2 && lastUser > from) {
+                from = lastUser;
+                historyTokens = sum(cost, from, history.size());
+                room = budget - fixed - historyTokens;
+            }
+            if (contextTokens > 0 && contextTokens > room) {
+                int overhead = (stableTokens > 0 ? CONTEXT_OVERHEAD : 0) + (turnTokens > 0 ? CONTEXT_OVERHEAD : 0);
+                scale = Math.max(0.0, (double) (room - overhead) / (contextTokens - overhead));
+                stable = shrink(stable, scale);
+                turn = shrink(turn, scale);
+                stableTokens = contextTokens(stable);
+                turnTokens = contextTokens(turn);
+            }
+        }
+
+        // 4) last resort: cut the question itself
+        var kept = new ArrayList<>(history.subList(from, history.size()));
+        boolean cutQuestion = false;
+        int over = fixed + historyTokens + stableTokens + turnTokens - budget;
+        if (over > 0 && lastUser >= from) {
+            int idx = lastUser - from;
+            var q = kept.get(idx);
+            int allowed = Math.max(0, cost[lastUser] - MESSAGE_OVERHEAD - over - TokenEstimator.estimate(TRUNCATED));
+            String text = q.content().substring(0, TokenEstimator.prefixLengthWithin(q.content(), allowed)) + TRUNCATED;
+            kept.set(idx, new Message(q.role(), text));
+            historyTokens += TokenEstimator.estimate(text) + MESSAGE_OVERHEAD - cost[lastUser];
+            cutQuestion = true;
+        }
+
+        int after = fixed + historyTokens + stableTokens + turnTokens;
+        if (after > budget) {
+            log.warn("prompt over budget after trimming: ~{} of {} tokens", after, budget);
+            throw new IllegalArgumentException("prompt (~" + after + " tokens) exceeds the input budget of " + budget);
+        }
+        var out = new WrappedRequest(
+                new ChatRequest(kept, req.system(), req.maxTokens(), req.temperature(), req.topP()),
+                stable, turn);
+        var plan = new Plan(out, budget, before, after, from, scale, cutQuestion);
+
+        trimmed.incrementAndGet();
+        dropped.addAndGet(from);
+        if (scale < 1.0) shrunk.incrementAndGet();
+        if (cutQuestion) truncated.incrementAndGet();
+        log.info("prompt over budget: ~{} -> ~{} of {} tokens (dropped {} messages, context x{}, question cut: {})",
+                before, after, budget, from, String.format("%.2f", scale), cutQuestion);
+        return plan;
+    }
+
+    public Stats stats() {
+        return new Stats(planned.get(), trimmed.get(), dropped.get(), shrunk.get(), truncated.get());
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private static int contextTokens(List<ContextSegment> ctx) {
+        if (ctx.isEmpty()) return 0;
+        int tokens = CONTEXT_OVERHEAD;
+        for (var seg : ctx) tokens += TokenEstimator.estimate(seg.block());
+        return tokens;
+    }
+
+    /** Converse wants the conversation to open with a user turn. */
+    private static int skipLeadingAssistant(List<Message> history, int from, int lastUser, int[] cost) {
+        while (from < lastUser && (cost[from] == 0 || !"user".equalsIgnoreCase(history.get(from).role()))) from++;
+        return from;
+    }
+
+    private static int sum(int[] cost, int from, int to) {
+        int s = 0;
+        for (int i = from; i < to; i++) s += cost[i];
+        return s;
+    }
+
+    /** Cuts every segment to the same fraction of its size, keeping its header; untouched segments are reused. */
+    static List<ContextSegment> shrink(List<ContextSegment> ctx, double scale) {
+        if (ctx.isEmpty() || scale >= 1.0) return ctx;
+        var out = new ArrayList<ContextSegment>(ctx.size());
+        for (var seg : ctx) {
+            String block = seg.block();
+            int keep = (int) (TokenEstimator.estimate(block) * scale) - TokenEstimator.estimate(TRUNCATED);
+            int len = TokenEstimator.prefixLengthWithin(block, keep);
+            if (len >= block.length()) {
+                out.add(seg);
+            } else if (len > 0) {
+                out.add(new ContextSegment(seg.label(), block.substring(0, len) + TRUNCATED));
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,138 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Request preparation as a small stage graph: independent stages (file extraction, link fetching, the
+ * memory read) start together and are awaited under one per-request deadline. Each stage declares what
+ * it degrades to; a stage that fails or is still running at the deadline yields that fallback (and is
+ * cancelled) instead of holding up the turn. Stage durations go to the request's {@link StageTimings}.
+ */
+@Component
+public class RequestStages {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestStages.class);
+
+    private final ThreadPoolExecutor pool;
+    private final long budgetNanos;
+    private final MeterRegistry registry;
+
+    public RequestStages(
+            MeterRegistry registry,
+            @Value("${app.prepare.budget-ms:25000}") long budgetMs,
+            @Value("${app.prepare.max-threads:64}") int maxThreads
+    ) {
+        this.registry = registry;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        var n = new AtomicInteger();
+        // stages mostly wait (on extraction/fetch pools); past max-threads a stage runs on the caller instead
+        this.pool = new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> {
+                    var t = new Thread(r, "prepare-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Runs a whole preparation on the stage pool, so the caller's thread (a servlet thread) is free at once.
+     * Past {@code max-threads} it runs on the caller, like a stage would.
+     */
+    public <T> CompletableFuture<T> async(Supplier<T> body) {
+        return CompletableFuture.supplyAsync(body, pool);
+    }
+
+    /** A new graph for one request; its deadline starts now. */
+    public Graph begin(StageTimings timings) {
+        return new Graph(timings, System.nanoTime() + budgetNanos);
+    }
+
+    public final class Graph {
+        private final StageTimings timings;
+        private final long deadline;
+
+        private Graph(StageTimings timings, long deadline) {
+            this.timings = timings;
+            this.deadline = deadline;
+        }
+
+        /** Starts {@code body} now; {@code fallback} gets the failure (or a TimeoutException) if it doesn't finish. */
+        public <T> Stage<T> stage(String name, Callable<T> body, Function<Throwable, T> fallback) {
+            Future<T> f = pool.submit(() -> {
+                long t0 = System.nanoTime();
+                try {
+                    return body.call();
+                } finally {
+                    timings.record(name, System.nanoTime() - t0);
+                }
+            });
+            return new Stage<>(name, f, fallback, deadline);
+        }
+    }
+
+    public final class Stage<T> {
+        private final String name;
+        private final Future<T> future;
+        private final Function<Throwable, T> fallback;
+        private final long deadline;
+
+        private Stage(String name, Future<T> future, Function<Throwable, T> fallback, long deadline) {
+            this.name = name;
+            this.future = future;
+            this.fallback = fallback;
+            this.deadline = deadline;
+        }
+
+        /** The stage's result, or its fallback once it failed or the request deadline passed. */
+        public T await() {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                degraded("timeout");
+                return fallback.apply(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                degraded("interrupted");
+                return fallback.apply(e);
+            } catch (ExecutionException e) {
+                log.warn("Request stage {} failed: {}", name, e.getCause().toString());
+                degraded("failed");
+                return fallback.apply(e.getCause());
+            }
+        }
+
+        private void degraded(String reason) {
+            Counter.builder("chat.stage.degraded")
+                    .description("Request stages that fell back instead of delivering their result")
+                    .tag("stage", name)
+                    .tag("reason", reason)
+                    .register(registry)
+                    .increment();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockDeltaEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamMetadataEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamOutput;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Relays a Bedrock ConverseStream to an {@link SseEmitter}.
+ * <ul>
+ *   <li>Text deltas are coalesced and flushed once {@code flushChars} are pending or
+ *       {@code flushMillis} have passed since the first pending delta.</li>
+ *   <li>Writes to the emitter run on the {@code writer} executor, never on the Netty event loop that
+ *       delivers the events: a slow client only holds a writer thread.</li>
+ *   <li>Backpressure: after a size-triggered flush the next event is requested only once it has been
+ *       written, so a slow client slows the Bedrock stream instead of growing a buffer.</li>
+ *   <li>Client gone (send fails, emitter completes/times out): the subscription is cancelled
+ *       so generation stops.</li>
+ * </ul>
+ */
+public class SseRelay implements Subscriber<ConverseStreamOutput> {
+
+    /**
+     * What the stream's final metadata event reported, plus client-side timing.
+     * Nanosecond fields are -1 when no text arrived.
+     */
+    public record StreamSummary(TokenUsage usage, Long serverLatencyMs, long timeToFirstTokenNanos, long generationNanos) {}
+
+    private final SseEmitter emitter;
+    private final ScheduledExecutorService timer;
+    private final Executor writer;
+    private final int flushChars;
+    private final long flushMillis;
+    private final Consumer<StreamSummary> metadataSink;
+    private final long startNanos = System.nanoTime();
+
+    private final ReentrantLock lock = new ReentrantLock(); // serialises writes to the emitter; writer threads only
+    private final Object buffer = new Object();             // guards pending and flushTask; never held while writing
+    private final StringBuilder pending = new StringBuilder();
+    private ScheduledFuture<?> flushTask;
+    private volatile Subscription subscription;
+    private volatile boolean closed;
+    private volatile TokenUsage usage;
+    private volatile long firstTokenNanos;
+
+    public SseRelay(SseEmitter emitter, ScheduledExecutorService timer, Executor writer, int flushChars,
+                    long flushMillis, Consumer<StreamSummary> metadataSink) {
+        this.emitter = emitter;
+        this.timer = timer;
+        this.writer = writer;
+        this.flushChars = flushChars;
+        this.flushMillis = flushMillis;
+        this.metadataSink = metadataSink;
+
+        emitter.onCompletion(this::cancel);
+        emitter.onTimeout(this::cancel);
+        emitter.onError(ex -> cancel());
+    }
+
+    /** Token usage reported by the final metadata event, or null if the stream didn't get that far. */
+    public TokenUsage usage() {
+        return usage;
+    }
+
+    /** True once text has arrived; before that a failed call can be retried without the client noticing. */
+    public boolean started() {
+        return firstTokenNanos != 0;
+    }
+
+    /** {@link System#nanoTime()} of the first text delta, or 0 before it. */
+    public long firstTokenNanos() {
+        return firstTokenNanos;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Subscriber for one call attempt: the relay itself, except errors are left to the caller, who sees them
+     * on the call's future and decides between {@link #onError} and another attempt.
+     */
+    public Subscriber<ConverseStreamOutput> attempt() {
+        return new Subscriber<>() {
+            @Override public void onSubscribe(Subscription s) { SseRelay.this.onSubscribe(s); }
+            @Override public void onNext(ConverseStreamOutput event) { SseRelay.this.onNext(event); }
+            @Override public void onError(Throwable t) { /* reported through the call's future */ }
+            @Override public void onComplete() { SseRelay.this.onComplete(); }
+        };
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        this.subscription = s;
+        if (closed) s.cancel();
+        else s.request(1);
+    }
+
+    @Override
+    public void onNext(ConverseStreamOutput event) {
+        if (closed) return;
+        if (event instanceof ContentBlockDeltaEvent delta) {
+            // Anthropic text deltas arrive here
+            String chunk = delta.delta() == null ? null : delta.delta().text();
+            if (chunk != null && !chunk.isEmpty()) {
+                if (firstTokenNanos == 0) firstTokenNanos = System.nanoTime();
+                if (buffer(chunk)) {
+                    // full: write it, then ask for more
+                    write(() -> {
+                        flushLocked();
+                        requestNext();
+                    });
+                    return;
+                }
+            }
+        } else if (event instanceof ConverseStreamMetadataEvent meta) {
+            usage = meta.usage();
+            metadataSink.accept(summarize(meta));
+        }
+        requestNext();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (closed) return;
+        closed = true;
+        cancelTimer();
+        write(() -> emitter.completeWithError(t));
+    }
+
+    @Override
+    public void onComplete() {
+        if (closed) return;
+        write(() -> {
+            try {
+                flushLocked();
+                if (!closed) emitter.send(SseEmitter.event().name("done").data("[DONE]"));
+                closed = true;
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+            }
+        });
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private StreamSummary summarize(ConverseStreamMetadataEvent meta) {
+        long first = firstTokenNanos;
+        long ttft = first == 0 ? -1 : first - startNanos;
+        long generation = first == 0 ? -1 : System.nanoTime() - first;
+        Long latency = meta.metrics() == null ? null : meta.metrics().latencyMs();
+        return new StreamSummary(meta.usage(), latency, ttft, generation);
+    }
+
+    /** Adds a delta; true when enough is pending for a flush now, else a timed flush is armed. */
+    private boolean buffer(String chunk) {
+        synchronized (buffer) {
+            pending.append(chunk);
+            if (pending.length() >= flushChars) return true;
+            if (flushTask == null || flushTask.isDone()) {
+                // the timer only hands off: the write itself waits for the emitter on a writer thread
+                flushTask = timer.schedule(() -> write(this::flushLocked), flushMillis, TimeUnit.MILLISECONDS);
+            }
+            return false;
+        }
+    }
+
+    private void requestNext() {
+        var s = subscription;
+        if (!closed && s != null) s.request(1);
+    }
+
+    /** Runs {@code body} on a writer thread, holding the write lock. */
+    private void write(Runnable body) {
+        try {
+            writer.execute(() -> {
+                lock.lock();
+                try {
+                    body.run();
+                } finally {
+                    lock.unlock();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cancel(); // shutting down
+        }
+    }
+
+    /** Sends whatever is pending; what was buffered before this write goes out in order, in one event. */
+    private void flushLocked() {
+        String text;
+        synchronized (buffer) {
+            cancelTimer();
+            if (pending.isEmpty() || closed) return;
+            text = pending.toString();
+            pending.setLength(0);
+        }
+        try {
+            emitter.send(SseEmitter.event().data(text).reconnectTime(0));
+        } catch (IOException | IllegalStateException e) {
+            // client disconnected: stop generating rather than discarding tokens nobody will read
+            cancel();
+        }
+    }
+
+    private void cancelTimer() {
+        synchronized (buffer) {
+            if (flushTask != null) flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    private void cancel() {
+        if (closed && subscription == null) return;
+        closed = true;
+        cancelTimer();
+        var s = subscription;
+        if (s != null) s.cancel();
+    }
+}
@@ -0,0 +1,65 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-request stage clock. Each stage is recorded into the {@code chat.stage} timer and kept for the
+ * request's {@code Server-Timing} header, so a slow turn can be attributed from the browser's network tab.
+ */
+public final class StageTimings {
+
+    public static final String HEADER = "Server-Timing";
+
+    private record Stage(String name, long nanos) {}
+
+    private final MeterRegistry registry;
+    private final String endpoint;
+    private final long startNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>(6); // guarded by "this"
+
+    public StageTimings(MeterRegistry registry, String endpoint) {
+        this.registry = registry;
+        this.endpoint = endpoint;
+    }
+
+    public <T> T time(String stage, Supplier<T> body) {
+        long t0 = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            record(stage, System.nanoTime() - t0);
+        }
+    }
+
+    public void record(String stage, long nanos) {
+        Timer.builder("chat.stage")
+                .description("Time spent in one stage of a chat request")
+                .tag("stage", stage)
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        synchronized (this) {
+            stages.add(new Stage(stage, nanos));
+        }
+    }
+
+    /** e.g. {@code links;dur=412.3, context;dur=1.8, bedrock;dur=2310.0, total;dur=2725.4} */
+    public synchronized String serverTiming() {
+        var sb = new StringBuilder(stages.size() * 24 + 24);
+        for (var s : stages) {
+            sb.append(s.name()).append(";dur=").append(millis(s.nanos())).append(", ");
+        }
+        return sb.append("total;dur=").append(millis(System.nanoTime() - startNanos)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,284 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms the per-turn code paths before the first real request, without touching the network:
+ * Jackson (de)serialization of the DTOs, Converse request marshalling/signing/response parsing
+ * (against an in-memory HTTP client), PDF/DOCX/text extraction, HTML-to-text, memory and retrieval.
+ * <p>
+ * Runs in the CRaC {@code beforeCheckpoint} hook, so a Lambda SnapStart snapshot already has the
+ * classes loaded and the Bedrock/Textract clients built, and optionally once on startup for
+ * deployments without snapshots. With priming off the clients stay lazy until first use.
+ */
+@Component
+public class StartupPrimer implements Resource {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupPrimer.class);
+
+    private static final String PRIME_THREAD = "__prime__";
+    private static final String CANNED_CONVERSE = """
+            {"output":{"message":{"role":"assistant","content":[{"text":"ok"}]}},"stopReason":"end_turn",
+             "usage":{"inputTokens":1,"outputTokens":1,"totalTokens":2},"metrics":{"latencyMs":1}}""";
+
+    private final ClaudeService claude;
+    private final ContentExtractService extractor;
+    private final ExtractionCache extractionCache;
+    private final TextractOcrService ocr;
+    private final BedrockRuntimeClient bedrock;
+    private final BedrockRuntimeAsyncClient bedrockAsync;
+    private final ObjectMapper json;
+    private final boolean checkpointPriming;
+    private final boolean primeOnStart;
+
+    private final AtomicBoolean primed = new AtomicBoolean();
+
+    public StartupPrimer(
+            ClaudeService claude,
+            ContentExtractService extractor,
+            ExtractionCache extractionCache,
+            TextractOcrService ocr,
+            @Lazy BedrockRuntimeClient bedrock,
+            @Lazy BedrockRuntimeAsyncClient bedrockAsync,
+            ObjectMapper json,
+            @Value("${app.startup.checkpoint-priming:true}") boolean checkpointPriming,
+            @Value("${app.startup.prime-on-start:false}") boolean primeOnStart
+    ) {
+        this.claude = claude;
+        this.extractor = extractor;
+        this.extractionCache = extractionCache;
+        this.ocr = ocr;
+        this.bedrock = bedrock;
+        this.bedrockAsync = bedrockAsync;
+        this.json = json;
+        this.checkpointPriming = checkpointPriming;
+        this.primeOnStart = primeOnStart;
+    }
+
+    @PostConstruct
+    void register() {
+        // no-op on JVMs without CRaC; on SnapStart/CRaC the hook runs right before the snapshot
+        if (checkpointPriming) Core.getGlobalContext().register(this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onReady() {
+        if (primeOnStart) prime(false); // Textract stays lazy: most turns never OCR
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        prime(true);
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // nothing to restore: the primer holds no connections, and the real clients resolve
+        // credentials lazily on their first call
+    }
+
+    /**
+     * Runs every warm-up step once; each step is best effort. Builds the lazily injected Bedrock
+     * clients, and the Textract client too when {@code includeOcr} (free inside a snapshot).
+     */
+    public void prime(boolean includeOcr) {
+        if (!primed.compareAndSet(false, true)) return;
+        long t0 = System.nanoTime();
+        step("jackson", this::primeJackson);
+        step("converse", this::primeConverse);
+        step("extraction", this::primeExtraction);
+        step("html", () -> StreamingText.htmlToText(new StringReader(
+                "<html><body><h1>Title</h1><p>Hello &amp; welcome</p><script>x()</script></body></html>"), 10_000));
+        step("main-content", () -> MainContent.extract(
+                "<html><body><nav><a href=/>Home</a></nav><article><h1>Title</h1><p>Hello, welcome to the page."
+                        + "</p><ul><li>one</li></ul></article></body></html>", "https://localhost/", 10_000));
+        step("memory", this::primeMemory);
+        step("clients", () -> {
+            bedrock.serviceClientConfiguration();
+            bedrockAsync.serviceClientConfiguration();
+            if (includeOcr) ocr.client();
+        });
+        log.info("startup priming done in {} ms", (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    // ----------------------------
+    // steps
+    // ----------------------------
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static void step(String name, Step step) {
+        try {
+            step.run();
+        } catch (Exception | LinkageError e) {
+            log.warn("priming step {} failed: {}", name, e.toString());
+        }
+    }
+
+    private void primeJackson() throws IOException {
+        var req = new ChatRequest(List.of(new Message("user", "hello")), "sys", 16, 0.0, null);
+        var body = json.writeValueAsBytes(req);
+        json.readValue(body, ChatRequest.class);
+        json.writeValueAsString(Map.of("ok", true, "text", "hi", "tokensRequested", 16, "threadId", ""));
+    }
+
+    /** Real request building + the SDK's JSON protocol marshaller, signer and unmarshaller, served from memory. */
+    private void primeConverse() {
+        var history = List.of(
+                new Message("user", "What is in the file?"),
+                new Message("assistant", "A short guide."),
+                new Message("user", "Summarize it."));
+        var prompt = claude.toPrompt(new WrappedRequest(
+                new ChatRequest(history, "You are helpful.", 64, 0.0, null),
+                List.of(ContextSegment.of("guide.pdf", "Install the agent first.")),
+                List.of(ContextSegment.of(null, "--- LINKS FETCHED THIS TURN ---"), ContextSegment.of("x", "y"))));
+
+        try (var client = BedrockRuntimeClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("prime", "prime")))
+                .httpClient(new CannedHttpClient(CANNED_CONVERSE.getBytes(StandardCharsets.UTF_8)))
+                .build()) {
+            client.converse(ConverseRequest.builder()
+                    .modelId("prime")
+                    .system(prompt.system())
+                    .messages(prompt.messages())
+                    .inferenceConfig(c -> c.maxTokens(64))
+                    .build());
+        }
+    }
+
+    private void primeExtraction() throws IOException {
+        try {
+            extractor.extract(new Fixture("prime.pdf", "application/pdf", tinyPdf()));
+            extractor.extract(new Fixture("prime.docx", null, tinyDocx()));
+            extractor.extract(new Fixture("prime.txt", "text/plain",
+                    "plain text".getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            extractionCache.clear(); // don't keep fixture text around
+        }
+    }
+
+    /**
+     * Same code as the real beans, but on a throwaway in-memory instance: nothing reaches the durable
+     * store. The 1-token budget sends the selection through BM25 ranking.
+     */
+    private void primeMemory() {
+        var memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 10_000, 1024 * 1024, 1);
+        var retriever = new ContextRetriever(memory, true, 4, 1, 1500);
+        memory.append(PRIME_THREAD, "prime.txt", "Install the agent before configuring the policy.");
+        retriever.select(PRIME_THREAD, "how do I configure the policy?");
+        memory.context(PRIME_THREAD);
+        TokenEstimator.estimate("warm up the estimator 123");
+    }
+
+    private static byte[] tinyPdf() throws IOException {
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            var page = new PDPage();
+            doc.addPage(page);
+            try (var cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                cs.newLineAtOffset(50, 700);
+                cs.showText("Priming page");
+                cs.endText();
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] tinyDocx() throws IOException {
+        try (var doc = new XWPFDocument(); var out = new ByteArrayOutputStream()) {
+            doc.createParagraph().createRun().setText("Priming paragraph");
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("cell");
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** In-memory upload for the extraction step. */
+    private record Fixture(String name, String contentType, byte[] bytes) implements MultipartFile {
+        @Override public String getName() { return "file"; }
+        @Override public String getOriginalFilename() { return name; }
+        @Override public String getContentType() { return contentType; }
+        @Override public boolean isEmpty() { return bytes.length == 0; }
+        @Override public long getSize() { return bytes.length; }
+        @Override public byte[] getBytes() { return bytes; }
+        @Override public InputStream getInputStream() { return new ByteArrayInputStream(bytes); }
+        @Override public void transferTo(File dest) throws IOException { Files.write(dest.toPath(), bytes); }
+    }
+
+    /** Answers every request with the same 200 JSON body; never opens a socket. */
+    private record CannedHttpClient(byte[] body) implements SdkHttpClient {
+        @Override
+        public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+            return new ExecutableHttpRequest() {
+                @Override
+                public HttpExecuteResponse call() {
+                    return HttpExecuteResponse.builder()
+                            .response(SdkHttpResponse.builder()
+                                    .statusCode(200)
+                                    .putHeader("Content-Type", "application/json")
+                                    .putHeader("Content-Length", String.valueOf(body.length))
+                                    .build())
+                            .responseBody(AbortableInputStream.create(new ByteArrayInputStream(body)))
+                            .build();
+                }
+
+                @Override
+                public void abort() {}
+            };
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,221 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded-memory helpers for turning remote response bodies into text without
+ * materialising the whole body or a full DOM.
+ */
+public final class StreamingText {
+
+    private static final int SNIFF_BYTES = 4096;
+    private static final Pattern HEADER_CHARSET = Pattern.compile("(?i)charset\\s*=\\s*\"?([\\w.:-]+)");
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "(?i)<meta[^>]+charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)");
+
+    /** Elements whose content is never visible text. */
+    private static final Set<String> SKIP_CONTENT = Set.of("script", "style", "noscript", "template", "svg");
+
+    private StreamingText() {}
+
+    /** InputStream that reports EOF after {@code maxBytes}; {@link #truncated()} tells whether more was available. */
+    public static final class CappedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean truncated;
+
+        public CappedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        public boolean truncated() { return truncated; }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return probe();
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return probe();
+            int n = super.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        private int probe() throws IOException {
+            if (!truncated && super.read() >= 0) truncated = true;
+            return -1;
+        }
+    }
+
+    /**
+     * Picks the body charset: Content-Type parameter, then BOM, then (for HTML) a meta tag in the
+     * first few KB. Falls back to UTF-8. {@code in} must support mark/reset and is left unconsumed.
+     */
+    public static Charset detectCharset(BufferedInputStream in, String contentType, boolean html) throws IOException {
+        var m = HEADER_CHARSET.matcher(contentType == null ? "" : contentType);
+        if (m.find()) {
+            var cs = lookup(m.group(1));
+            if (cs != null) return cs;
+        }
+
+        in.mark(SNIFF_BYTES);
+        byte[] head = in.readNBytes(SNIFF_BYTES);
+        in.reset();
+
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF)
+            return StandardCharsets.UTF_8;
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) return StandardCharsets.UTF_16BE;
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) return StandardCharsets.UTF_16LE;
+
+        if (html) {
+            var meta = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+            if (meta.find()) {
+                var cs = lookup(meta.group(1));
+                if (cs != null) return cs;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /** Reads at most {@code maxChars} characters. */
+    public static String readText(Reader in, int maxChars) throws IOException {
+        var sb = new StringBuilder(Math.min(maxChars, 8192));
+        char[] buf = new char[8192];
+        int n;
+        while (sb.length() < maxChars && (n = in.read(buf, 0, Math.min(buf.length, maxChars - sb.length()))) > 0) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Single-pass HTML to visible text: tags are dropped, script/style content skipped, entities
+     * decoded and whitespace collapsed (the same shape as {@code Jsoup.parse(html).text()}).
+     * Stops reading as soon as {@code maxChars} of text have been produced.
+     */
+    public static String htmlToText(Reader in, int maxChars) throws IOException {
+        var out = new StringBuilder(Math.min(maxChars, 8192));
+        var run = new StringBuilder();   // current text run (entities still encoded)
+        var tag = new StringBuilder();   // current tag source, up to the name
+        String skipUntil = null;         // "</script" etc. while inside a skipped element
+
+        int state = 0;                   // 0 text, 1 tag, 2 comment
+        char quote = 0;
+        int c;
+        while (out.length() < maxChars && (c = in.read()) >= 0) {
+            char ch = (char) c;
+            switch (state) {
+                case 0 -> {
+                    if (ch == '<') {
+                        if (skipUntil == null) flush(run, out, maxChars);
+                        else run.setLength(0);
+                        tag.setLength(0);
+                        state = 1;
+                    } else if (skipUntil == null) {
+                        run.append(ch);
+                        // long runs are flushed at a word boundary so entities stay intact and memory stays flat
+                        if (run.length() >= 8192 && Character.isWhitespace(ch) || run.length() >= 65536) {
+                            flush(run, out, maxChars);
+                        }
+                    }
+                }
+                case 1 -> {
+                    if (tag.length() == 0 && !(Character.isLetter(ch) || ch == '/' || ch == '!')) {
+                        // a bare '<' in text ("a < b"), not markup
+                        if (skipUntil == null) run.append('<').append(ch);
+                        state = 0;
+                    } else if (quote != 0) {
+                        if (ch == quote) quote = 0;
+                    } else if (ch == '>') {
+                        String name = tagName(tag);
+                        if (skipUntil != null) {
+                            if (name.equals(skipUntil)) skipUntil = null;
+                        } else if (!name.startsWith("/") && SKIP_CONTENT.contains(name) && !selfClosing(tag)) {
+                            skipUntil = "/" + name;
+                        } else {
+                            run.append(' '); // tag boundaries separate words, as block elements would
+                        }
+                        state = 0;
+                    } else if ((ch == '"' || ch == '\'') && skipUntil == null && tag.length() > 1) {
+                        quote = ch;
+                    } else if (tag.length() < 64) {
+                        tag.append(ch);
+                        if (tag.length() == 3 && tag.toString().equals("!--")) state = 2;
+                    }
+                }
+                default -> {
+                    // comment: wait for "-->"
+                    tag.append(ch);
+                    int len = tag.length();
+                    if (len >= 5 && tag.charAt(len - 1) == '>' && tag.charAt(len - 2) == '-' && tag.charAt(len - 3) == '-') {
+                        state = 0;
+                    } else if (len > 64) {
+                        tag.delete(3, len - 3);
+                    }
+                }
+            }
+        }
+        if (skipUntil == null) flush(run, out, maxChars);
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') end--;
+        out.setLength(Math.min(end, maxChars));
+        return out.toString();
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private static void flush(StringBuilder run, StringBuilder out, int maxChars) {
+        if (run.length() == 0) return;
+        String text = run.indexOf("&") >= 0 ? Parser.unescapeEntities(run.toString(), false) : run.toString();
+        run.setLength(0);
+        for (int i = 0; i < text.length() && out.length() < maxChars; i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch) || ch == '\u00A0') {
+                if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') out.append(' ');
+            } else {
+                out.append(ch);
+            }
+        }
+    }
+
+    private static String tagName(StringBuilder tag) {
+        int i = 0;
+        int n = tag.length();
+        var sb = new StringBuilder();
+        if (i < n && tag.charAt(i) == '/') sb.append(tag.charAt(i++));
+        while (i < n && Character.isWhitespace(tag.charAt(i))) i++;
+        while (i < n && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '/') sb.append(tag.charAt(i++));
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean selfClosing(StringBuilder tag) {
+        return tag.length() > 0 && tag.charAt(tag.length() - 1) == '/';
+    }
+
+    private static Charset lookup(String name) {
+        try {
+            return Charset.forName(name.trim());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,32 +1,71 @@
 package com.dct.aws_ai_chatbot.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.textract.TextractClient;
 import software.amazon.awssdk.services.textract.model.*;
 
+import java.net.URI;
 import java.util.stream.Collectors;
 
 @Service
-public class TextractOcrService {
-    private final TextractClient textract;
+public class TextractOcrService implements OcrEngine {
+    private final MeterRegistry registry;
+    private final String region;
+    private final String endpoint;
+    private volatile TextractClient textract; // built on first OCR; most turns never need it
 
-    public TextractOcrService() {
-        // Uses default credentials/region from env or ~/.aws; override if you prefer
-        this.textract = TextractClient.builder()
-                .region(Region.of(System.getenv().getOrDefault("AWS_REGION", "us-east-1")))
-                .build();
+    public TextractOcrService(
+            MeterRegistry registry,
+            @Value("${app.textract.region:}") String region,
+            // Optional, e.g. http://localhost:8089 to run against a local DetectDocumentText stub
+            @Value("${app.textract.endpoint:}") String endpoint
+    ) {
+        this.registry = registry;
+        this.region = region;
+        this.endpoint = endpoint;
+    }
+
+    TextractClient client() {
+        var c = textract;
+        if (c == null) {
+            synchronized (this) {
+                c = textract;
+                if (c == null) {
+                    // Default credentials from env or ~/.aws; region from app.textract.region, else AWS_REGION
+                    var builder = TextractClient.builder().region(Region.of(region.isBlank()
+                            ? System.getenv().getOrDefault("AWS_REGION", "us-east-1") : region));
+                    if (!endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+                    c = textract = builder.build();
+                }
+            }
+        }
+        return c;
     }
 
+    @Override
     public String detectLines(byte[] bytes) {
         var req = DetectDocumentTextRequest.builder()
                 .document(Document.builder().bytes(SdkBytes.fromByteArray(bytes)).build())
                 .build();
-        var resp = textract.detectDocumentText(req);
-        return resp.blocks().stream()
-                .filter(b -> b.blockType() == BlockType.LINE)
-                .map(Block::text)
-                .collect(Collectors.joining("\n"));
+        var sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            var resp = client().detectDocumentText(req);
+            outcome = "ok";
+            return resp.blocks().stream()
+                    .filter(b -> b.blockType() == BlockType.LINE)
+                    .map(Block::text)
+                    .collect(Collectors.joining("\n"));
+        } finally {
+            sample.stop(Timer.builder("ocr.textract")
+                    .description("Textract DetectDocumentText call duration")
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
     }
 }
@@ -1,38 +1,409 @@
 package com.dct.aws_ai_chatbot.service;
 
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * Per-thread context memory: the hot, in-heap tier over a {@link ThreadMemoryStore}.
+ * Each thread holds a list of labelled segments (one per file/link) under its own lock; every change is
+ * written through to the store, and a thread missing from the heap is restored from it on first use.
+ * The heap is bounded three ways: chars per thread (oldest whole segments dropped first), a global byte
+ * budget (least recently used threads evicted), and an idle TTL. Eviction and expiry only leave the heap.
+ */
 @Service
 public class ThreadMemoryService {
-    private static final int MAX_LEN = 120_000; // keep memory bounded
-    private record Slot(StringBuilder buf, Instant lastUpdate) {}
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadMemoryService.class);
+
+    /**
+     * One persisted block, e.g. an uploaded file or a fetched link. {@code digest} identifies a sticky upload
+     * held verbatim; it leaves the thread with the segment (trimmed, summarized, cut).
+     */
+    public record Segment(String label, String text, String digest) {
+        public Segment(String label, String text) {
+            this(label, text, null);
+        }
+
+        int chars() { return ContextSegment.blockLength(label, text); } // as sent: one content block each
+    }
+
+    /** A segment's label and its paragraph fingerprints ({@link MainContent#fingerprints}). */
+    public record Fingerprints(String label, long[] paragraphs) {}
+
+    public record Stats(int threads, long bytes, long maxBytes, long evictedThreads, long expiredThreads, long droppedSegments) {}
+
+    private static final long SWEEP_INTERVAL_MILLIS = 30_000;
+    private static final ContextSegment TRIMMED = ContextSegment.of(null, "[memory trimmed]");
+
+    private static final class Slot {
+        final ReentrantLock lock = new ReentrantLock();
+        final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        final Map<String, Segment> digests = new HashMap<>(); // digest -> live segment; guarded by lock
+        long chars;              // guarded by lock
+        boolean trimmed;         // guarded by lock
+        boolean released;        // guarded by lock; set once the slot has left the map
+        IdentityHashMap<Segment, ContextSegment> rendered = new IdentityHashMap<>(); // guarded by lock
+        IdentityHashMap<Segment, Fingerprints> fingerprints = new IdentityHashMap<>(); // guarded by lock
+        volatile List<ContextSegment> context; // rendered segments; null when stale
+        volatile long lastAccess = System.currentTimeMillis();
+    }
+
+    private final ThreadMemoryStore store;
+    private final int maxCharsPerThread;
+    private final long maxBytes;
+    private final long idleTtlMillis;
 
     private final Map<String, Slot> mem = new ConcurrentHashMap<>();
+    private final AtomicLong totalChars = new AtomicLong();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    // set by MemorySummarizer; called off the slot lock when an append leaves a thread above the watermark
+    private volatile long watermarkChars = Long.MAX_VALUE;
+    private volatile Consumer<String> overWatermark = id -> {};
+
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public ThreadMemoryService(
+            ThreadMemoryStore store,
+            @Value("${app.memory.max-chars-per-thread:120000}") int maxCharsPerThread,
+            @Value("${app.memory.max-bytes:67108864}") long maxBytes,
+            @Value("${app.memory.idle-ttl-minutes:60}") long idleTtlMinutes
+    ) {
+        this.store = store;
+        this.maxCharsPerThread = maxCharsPerThread;
+        this.maxBytes = maxBytes;
+        this.idleTtlMillis = idleTtlMinutes * 60_000L;
+    }
 
     public void append(String threadId, String label, String text) {
-        if (threadId == null || threadId.isBlank() || text == null || text.isBlank()) return;
-        var slot = mem.computeIfAbsent(threadId, id -> new Slot(new StringBuilder(), Instant.now()));
-        var sb = slot.buf();
-        if (sb.length() > 0) sb.append("\n\n");
-        sb.append("=== ").append(label).append(" ===\n").append(text.trim());
-        if (sb.length() > MAX_LEN) {
-            // simple head-trim
-            int trimTo = (int)(MAX_LEN * 0.8);
-            String tail = sb.substring(sb.length() - trimTo);
-            sb.setLength(0);
-            sb.append("[memory trimmed]\n").append(tail);
-        }
-    }
-
-    public String snapshot(String threadId) {
-        if (threadId == null) return "";
+        appendOnce(threadId, null, label, text);
+    }
+
+    /**
+     * Appends a sticky upload unless the thread still holds a segment with the same {@code digest}.
+     * Returns false when it was already held, so callers can skip re-sending it as new content.
+     */
+    public boolean appendOnce(String threadId, String digest, String label, String text) {
+        if (threadId == null || threadId.isBlank() || text == null || text.isBlank()) return true;
+        var seg = new Segment(label == null ? "" : label, text.trim(), digest);
+
+        long chars;
+        while (true) {
+            var slot = slot(threadId);
+            slot.lock.lock();
+            try {
+                if (slot.released) continue; // evicted between lookup and lock; retry on a fresh slot
+                if (digest != null && slot.digests.containsKey(digest)) return false;
+                slot.segments.addLast(seg);
+                add(slot, seg.chars());
+                if (digest != null) slot.digests.put(digest, seg);
+                trimThread(slot);
+                slot.context = null;
+                durably(() -> store.append(threadId, seg)); // under the slot lock: the store sees appends in order
+                chars = slot.chars;
+                break;
+            } finally {
+                slot.lock.unlock();
+            }
+        }
+        enforceBudget(threadId);
+        if (chars > watermarkChars) overWatermark.accept(threadId);
+        return true;
+    }
+
+    /** Registers the callback for threads whose memory grew past {@code chars}; it must not block. */
+    public void onOverWatermark(long chars, Consumer<String> listener) {
+        this.overWatermark = listener;
+        this.watermarkChars = chars;
+    }
+
+    /**
+     * Replaces the thread's oldest segments with {@code summary}, only if they are still exactly
+     * {@code prefix} (the same instances, in order). Returns false when the thread changed meanwhile
+     * (trimmed, cleared, evicted), in which case nothing is replaced.
+     */
+    public boolean replacePrefix(String threadId, List<Segment> prefix, Segment summary) {
+        var slot = mem.get(threadId);
+        if (slot == null || prefix.isEmpty()) return false;
+        slot.lock.lock();
+        try {
+            if (slot.released || slot.segments.size() < prefix.size()) return false;
+            var it = slot.segments.iterator();
+            for (var seg : prefix) {
+                if (it.next() != seg) return false;
+            }
+            for (var seg : prefix) {
+                remove(slot, slot.segments.removeFirst());
+            }
+            slot.segments.addFirst(summary);
+            add(slot, summary.chars());
+            slot.context = null;
+            var stored = new ThreadMemoryStore.Stored(List.copyOf(slot.segments), slot.trimmed);
+            durably(() -> store.replace(threadId, stored));
+            return true;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * The block {@link #context} rendered for the held upload with this {@code digest}: the same instance the
+     * thread's context lists carry, so callers can tell by identity whether a list holds the upload whole.
+     * Null when the thread no longer holds it or hasn't rendered it yet.
+     */
+    public ContextSegment renderedBlock(String threadId, String digest) {
+        if (threadId == null || digest == null) return null;
+        var slot = find(threadId);
+        if (slot == null) return null;
+        slot.lock.lock();
+        try {
+            var seg = slot.digests.get(digest);
+            return seg == null ? null : slot.rendered.get(seg);
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /** The thread's segments, oldest first. */
+    public List<Segment> segments(String threadId) {
+        if (threadId == null) return List.of();
+        var slot = find(threadId);
+        if (slot == null) return List.of();
+        slot.lock.lock();
+        try {
+            return List.copyOf(slot.segments);
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * The thread's memory as context blocks, oldest first. The list is rebuilt only after the thread changes,
+     * and then only new segments are rendered; the others keep the blocks earlier turns already sent.
+     */
+    public List<ContextSegment> context(String threadId) {
+        if (threadId == null) return List.of();
+        var slot = find(threadId);
+        if (slot == null) return List.of();
+        var cached = slot.context;
+        if (cached != null) return cached;
+        slot.lock.lock();
+        try {
+            if (slot.context != null) return slot.context;
+            var blocks = new ArrayList<ContextSegment>(slot.segments.size() + 1);
+            if (slot.trimmed) blocks.add(TRIMMED);
+            var rendered = new IdentityHashMap<Segment, ContextSegment>(slot.segments.size() * 2);
+            for (var seg : slot.segments) {
+                var block = slot.rendered.get(seg);
+                if (block == null) block = ContextSegment.of(seg.label(), seg.text());
+                rendered.put(seg, block);
+                blocks.add(block);
+            }
+            var context = List.copyOf(blocks);
+            if (!slot.released) {
+                slot.rendered = rendered; // segments that left the thread drop their blocks too
+                slot.context = context;
+            }
+            return context;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * Paragraph fingerprints of the thread's segments, oldest first. Each segment is split and hashed once
+     * while it stays in the thread, so repeated-paragraph checks don't re-read the whole memory every turn.
+     */
+    public List<Fingerprints> fingerprints(String threadId) {
+        if (threadId == null) return List.of();
+        var slot = find(threadId);
+        if (slot == null) return List.of();
+        slot.lock.lock();
+        try {
+            var out = new ArrayList<Fingerprints>(slot.segments.size());
+            var kept = new IdentityHashMap<Segment, Fingerprints>(slot.segments.size() * 2);
+            for (var seg : slot.segments) {
+                var fp = slot.fingerprints.get(seg);
+                if (fp == null) fp = new Fingerprints(seg.label(), MainContent.fingerprints(seg.text()));
+                kept.put(seg, fp);
+                out.add(fp);
+            }
+            if (!slot.released) slot.fingerprints = kept; // segments that left the thread drop theirs too
+            return out;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    public void clear(String threadId) {
+        if (threadId == null) return;
+        var slot = mem.remove(threadId);
+        if (slot != null) release(slot);
+        durably(() -> store.clear(threadId));
+    }
+
+    public Stats stats() {
+        return new Stats(mem.size(), 2 * totalChars.get(), maxBytes, evicted.get(), expired.get(), dropped.get());
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    /** The thread's slot for a write: from the heap, else restored from the store, else a new one. */
+    private Slot slot(String threadId) {
+        sweepIfDue();
         var slot = mem.get(threadId);
-        return (slot == null) ? "" : slot.buf().toString();
+        if (slot == null) {
+            var restored = restore(threadId);
+            slot = publish(threadId, restored == null ? new Slot() : restored);
+        }
+        slot.lastAccess = System.currentTimeMillis();
+        return slot;
     }
 
-    public void clear(String threadId) { if (threadId != null) mem.remove(threadId); }
+    /** The thread's slot for a read, restored from the store if it isn't hot; null when the thread is unknown. */
+    private Slot find(String threadId) {
+        var slot = mem.get(threadId);
+        if (slot == null) {
+            var restored = restore(threadId);
+            if (restored == null) return null;
+            slot = publish(threadId, restored);
+            if (slot == restored) enforceBudget(threadId);
+        }
+        slot.lastAccess = System.currentTimeMillis();
+        return slot;
+    }
+
+    /**
+     * Store reads happen outside the map (a load inside computeIfAbsent would hold the bin, and every
+     * thread hashed to it, for the whole read); the first slot published wins and a loser is released.
+     */
+    private Slot publish(String threadId, Slot loaded) {
+        var winner = mem.putIfAbsent(threadId, loaded);
+        if (winner == null) return loaded;
+        release(loaded);
+        return winner;
+    }
+
+    private Slot restore(String threadId) {
+        ThreadMemoryStore.Stored stored;
+        try {
+            stored = store.load(threadId);
+        } catch (RuntimeException e) {
+            log.warn("Could not restore memory for thread {}: {}", threadId, e.toString());
+            return null;
+        }
+        if (stored == null) return null;
+        var slot = new Slot();
+        for (var seg : stored.segments()) {
+            slot.segments.addLast(seg);
+            add(slot, seg.chars());
+            if (seg.digest() != null) slot.digests.put(seg.digest(), seg);
+        }
+        slot.trimmed = stored.trimmed();
+        trimThread(slot);
+        return slot;
+    }
+
+    /** The heap copy stays authoritative for this instance when the store fails; the write is just not durable. */
+    private static void durably(Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            log.warn("Thread memory store write failed: {}", e.toString());
+        }
+    }
+
+    private void add(Slot slot, long chars) {
+        slot.chars += chars;
+        totalChars.addAndGet(chars);
+    }
+
+    /** Accounts for a segment that left the thread; its digest goes with it. */
+    private void remove(Slot slot, Segment seg) {
+        add(slot, -seg.chars());
+        if (seg.digest() != null) slot.digests.remove(seg.digest(), seg);
+    }
+
+    /** Drops oldest whole segments over the per-thread cap; a single oversized segment keeps its tail. */
+    private void trimThread(Slot slot) {
+        while (slot.chars > maxCharsPerThread && slot.segments.size() > 1) {
+            remove(slot, slot.segments.removeFirst());
+            slot.trimmed = true;
+            dropped.incrementAndGet();
+        }
+        if (slot.chars > maxCharsPerThread) {
+            var only = slot.segments.removeFirst();
+            int keep = Math.max(0, (int) (maxCharsPerThread * 0.8) - ContextSegment.blockLength(only.label(), ""));
+            var cut = new Segment(only.label(), only.text().substring(only.text().length() - keep)); // no longer whole
+            slot.segments.addFirst(cut);
+            remove(slot, only);
+            add(slot, cut.chars());
+            slot.trimmed = true;
+        }
+    }
+
+    /** Evicts least recently used threads (other than the one just written) until under the byte budget. */
+    private void enforceBudget(String keepThreadId) {
+        if (2 * totalChars.get() <= maxBytes) return;
+        // copy the access times first: they keep moving while we sort
+        record Candidate(String id, Slot slot, long lastAccess) {}
+        var byAge = new ArrayList<Candidate>();
+        mem.forEach((id, slot) -> byAge.add(new Candidate(id, slot, slot.lastAccess)));
+        byAge.sort(Comparator.comparingLong(Candidate::lastAccess));
+        for (var c : byAge) {
+            if (2 * totalChars.get() <= maxBytes) break;
+            if (c.id().equals(keepThreadId)) continue;
+            if (mem.remove(c.id(), c.slot())) {
+                release(c.slot());
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    private void sweepIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_MILLIS || !lastSweep.compareAndSet(last, now)) return;
+        for (var e : mem.entrySet()) {
+            if (now - e.getValue().lastAccess > idleTtlMillis && mem.remove(e.getKey(), e.getValue())) {
+                release(e.getValue());
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    private void release(Slot slot) {
+        slot.lock.lock();
+        try {
+            totalChars.addAndGet(-slot.chars);
+            slot.chars = 0;
+            slot.released = true;
+            slot.segments.clear();
+            slot.digests.clear();
+            slot.rendered.clear();
+            slot.fingerprints.clear();
+            slot.context = null;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
 }
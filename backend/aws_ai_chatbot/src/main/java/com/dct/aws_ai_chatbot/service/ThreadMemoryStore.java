@@ -0,0 +1,49 @@
+package com.dct.aws_ai_chatbot.service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Durable tier behind {@link ThreadMemoryService}. The service keeps hot threads on the heap and writes every
+ * change through to the store; a thread that isn't on the heap (cold start, redeploy, evicted, expired) is
+ * restored from here on first use.
+ * <p>
+ * Implementations must keep each thread's segments in append order and make {@link #clear} win over
+ * everything appended before it. Records for one thread id are small and always read together, so a
+ * key-value backend (e.g. one DynamoDB partition per thread id, sort key = sequence) fits the same contract.
+ */
+public interface ThreadMemoryStore {
+
+    /** Everything the store holds for one thread; {@code trimmed} when it dropped old segments to stay bounded. */
+    record Stored(List<ThreadMemoryService.Segment> segments, boolean trimmed) {
+        /** Digests of the sticky uploads still held; they live on their segments, so trimming drops them too. */
+        public Set<String> digests() {
+            var digests = new HashSet<String>();
+            for (var seg : segments) {
+                if (seg.digest() != null) digests.add(seg.digest());
+            }
+            return digests;
+        }
+    }
+
+    /** Heap only: nothing survives a restart. */
+    ThreadMemoryStore NONE = new ThreadMemoryStore() {
+        @Override public Stored load(String threadId) { return null; }
+        @Override public void append(String threadId, ThreadMemoryService.Segment segment) {}
+        @Override public void clear(String threadId) {}
+    };
+
+    /** The thread's stored memory, or null when the store has nothing for it. */
+    Stored load(String threadId);
+
+    void append(String threadId, ThreadMemoryService.Segment segment);
+
+    void clear(String threadId);
+
+    /** Replaces everything held for the thread, e.g. after older segments were summarized. */
+    default void replace(String threadId, Stored stored) {
+        clear(threadId);
+        stored.segments().forEach(seg -> append(threadId, seg));
+    }
+}
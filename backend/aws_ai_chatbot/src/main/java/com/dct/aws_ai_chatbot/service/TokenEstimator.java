@@ -0,0 +1,69 @@
+package com.dct.aws_ai_chatbot.service;
+
+/**
+ * Cheap, allocation-free token estimate for Claude-style BPE tokenizers.
+ * Letter runs cost about one token per 4 chars, digit runs one per 3, each punctuation mark
+ * one, and non-Latin characters (CJK etc.) roughly one each. Errs slightly high on purpose.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {}
+
+    public static int estimate(CharSequence s) {
+        if (s == null) return 0;
+        int tokens = 0;
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c < 0x80 && Character.isLetter(c)) {
+                int start = i;
+                while (i < n && s.charAt(i) < 0x80 && Character.isLetter(s.charAt(i))) i++;
+                tokens += (i - start + 3) / 4;
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < n && Character.isDigit(s.charAt(i))) i++;
+                tokens += (i - start + 2) / 3;
+            } else {
+                tokens++;
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /** Length of the longest prefix of {@code s} estimated at no more than {@code maxTokens}. */
+    public static int prefixLengthWithin(CharSequence s, int maxTokens) {
+        if (s == null || maxTokens <= 0) return 0;
+        int tokens = 0;
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int perToken;
+            if (c < 0x80 && Character.isLetter(c)) {
+                while (i < n && s.charAt(i) < 0x80 && Character.isLetter(s.charAt(i))) i++;
+                perToken = 4;
+            } else if (Character.isDigit(c)) {
+                while (i < n && Character.isDigit(s.charAt(i))) i++;
+                perToken = 3;
+            } else {
+                i++;
+                perToken = 1;
+            }
+            int cost = (i - start + perToken - 1) / perToken;
+            if (tokens + cost > maxTokens) {
+                return start + (maxTokens - tokens) * perToken; // cut inside the run
+            }
+            tokens += cost;
+        }
+        return n;
+    }
+}
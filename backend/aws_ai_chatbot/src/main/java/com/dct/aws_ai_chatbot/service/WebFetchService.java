@@ -1,64 +1,248 @@
 package com.dct.aws_ai_chatbot.service;
 
-import org.jsoup.Jsoup;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class WebFetchService {
+    private static final Logger log = LoggerFactory.getLogger(WebFetchService.class);
+    private static final Duration PER_FETCH_TIMEOUT = Duration.ofSeconds(10);
+    private static final long PDF_MAIN_MEMORY_BYTES = 8L * 1024 * 1024; // PDFBox spills to scratch files beyond this
+
+    public enum FetchStatus { OK, FAILED, TIMED_OUT }
+
+    /** Outcome of one link in a {@link #fetchAll} batch, with wall-clock time spent on it. */
+    public record FetchResult(String raw, String url, String text, FetchStatus status, long millis) {}
+
+    /** Page text, or for a failed fetch the note that stands in for it; only OK text is cached. */
+    private record Fetched(String text, FetchStatus status) {
+        static Fetched ok(String text) { return new Fetched(text, FetchStatus.OK); }
+        static Fetched failed(String note) { return new Fetched(note, FetchStatus.FAILED); }
+    }
+
+    /** The body went past {@code max-download-bytes} where a prefix is no use (PDF). */
+    private static final class TooLarge extends IOException {
+        TooLarge(String msg) {
+            super(msg);
+        }
+    }
+
     private final HttpClient http = HttpClient.newBuilder()
             .followRedirects(HttpClient.Redirect.NORMAL)
             .connectTimeout(Duration.ofSeconds(6))
             .build();
 
+    private final ExecutorService pool;
+    private final int maxPerHost;
+    private final Duration budget;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final WebPageCache cache;
+    private final MeterRegistry registry;
+    private final long maxDownloadBytes;
+    private final int maxTextChars;
+    private final boolean mainContent;
+    private final int maxHtmlChars;
+    private final Semaphore domPermits;
+
+    public WebFetchService(
+            WebPageCache cache,
+            MeterRegistry registry,
+            @Value("${app.web.max-concurrency:8}") int maxConcurrency,
+            @Value("${app.web.max-per-host:2}") int maxPerHost,
+            @Value("${app.web.budget-ms:8000}") long budgetMs,
+            @Value("${app.web.max-download-bytes:10485760}") long maxDownloadBytes,
+            @Value("${app.web.max-text-chars:200000}") int maxTextChars,
+            @Value("${app.web.main-content:true}") boolean mainContent,
+            @Value("${app.web.max-html-chars:393216}") int maxHtmlChars,
+            @Value("${app.web.max-dom-parses:2}") int maxDomParses
+    ) {
+        // Java 17 target: a small bounded daemon pool stands in for virtual threads.
+        var n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            var t = new Thread(r, "web-fetch-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.maxPerHost = maxPerHost;
+        this.budget = Duration.ofMillis(budgetMs);
+        this.cache = cache;
+        this.registry = registry;
+        this.maxDownloadBytes = maxDownloadBytes;
+        this.maxTextChars = maxTextChars;
+        this.mainContent = mainContent;
+        this.maxHtmlChars = maxHtmlChars;
+        // a parsed page costs several times its markup on the heap; bound how many are alive at once
+        this.domPermits = new Semaphore(Math.max(1, maxDomParses));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
     // Simple URL detector (http/https)
     public static boolean looksLikeUrl(String s) {
         return s != null && s.matches("(?i)\\bhttps?://\\S+");
     }
 
     public String fetchText(String url) {
+        return fetch(url, PER_FETCH_TIMEOUT).text();
+    }
+
+    private Fetched fetch(String url, Duration timeout) {
+        String key = WebPageCache.normalize(url);
+        var cached = cache.get(key);
+        if (cached != null && cached.isFresh()) {
+            cache.recordHit();
+            return Fetched.ok(cached.text());
+        }
         try {
-            var req = HttpRequest.newBuilder(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
+            var rb = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
                     .header("User-Agent", "ai-chatbot/1.0 (+https://localhost)")
-                    .GET()
-                    .build();
-            var resp = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
-            if (resp.statusCode() >= 400) return "[fetch failed " + resp.statusCode() + " for " + url + "]";
-            var ctype = resp.headers().firstValue("content-type").orElse("application/octet-stream").toLowerCase();
-            byte[] body = resp.body();
-
-            // PDF -> use PDFBox (you already added it)
-            if (ctype.contains("pdf") || url.toLowerCase().endsWith(".pdf")) {
-                try (var doc = org.apache.pdfbox.Loader.loadPDF(body)) {
-                    var stripper = new org.apache.pdfbox.text.PDFTextStripper();
-                    return stripper.getText(doc);
+                    .GET();
+            // Stale entry: revalidate instead of re-downloading
+            if (cached != null && cached.etag() != null) rb.header("If-None-Match", cached.etag());
+            if (cached != null && cached.lastModified() != null) rb.header("If-Modified-Since", cached.lastModified());
+
+            // Body is consumed as a stream so a huge page or PDF never sits on the heap in full.
+            var resp = http.send(rb.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (var body = resp.body()) {
+                if (resp.statusCode() == 304 && cached != null) {
+                    cache.recordRevalidated();
+                    cache.refresh(key, cached, resp.headers());
+                    return Fetched.ok(cached.text());
                 }
-            }
+                cache.recordMiss();
+                if (resp.statusCode() >= 400) {
+                    return Fetched.failed("[fetch failed " + resp.statusCode() + " for " + url + "]");
+                }
+                var ctype = resp.headers().firstValue("content-type").orElse("application/octet-stream").toLowerCase();
 
-            // HTML -> parse text with jsoup
-            if (ctype.contains("html") || ctype.contains("xml") || ctype.contains("xhtml")) {
-                String html = new String(body, java.nio.charset.StandardCharsets.UTF_8);
-                return Jsoup.parse(html).text(); // visible text only
+                String text = toText(url, ctype, body);
+                if (text == null) return Fetched.failed("[unsupported content-type: " + ctype + " for " + url + "]");
+                cache.put(key, text, resp.headers());
+                return Fetched.ok(text);
             }
+        } catch (TooLarge e) {
+            return Fetched.failed("[fetch aborted: " + e.getMessage() + " for " + url + "]");
+        } catch (Exception e) {
+            return Fetched.failed("[error fetching " + url + ": " + e.getMessage() + "]");
+        }
+    }
+
+    /** Reads and parses under a DOM permit; waiting is bounded by the fetch budget, which interrupts. */
+    private String mainContent(String url, Reader reader) throws IOException {
+        try {
+            domPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("fetch budget exceeded");
+        }
+        try {
+            return MainContent.extract(StreamingText.readText(reader, maxHtmlChars), url, maxTextChars);
+        } finally {
+            domPermits.release();
+        }
+    }
+
+    /** Extracts visible text from a response body, or null for unsupported/binary types. */
+    private String toText(String url, String ctype, InputStream raw) throws IOException {
+        var capped = new StreamingText.CappedInputStream(raw, maxDownloadBytes);
+
+        // PDF -> spool to a temp file and let PDFBox read it from disk, page by page
+        if (ctype.contains("pdf") || url.toLowerCase().endsWith(".pdf")) {
+            return pdfToText(capped);
+        }
+
+        var in = new BufferedInputStream(capped, 16 * 1024);
 
-            // Plain text
-            if (ctype.startsWith("text/")) {
-                return new String(body, java.nio.charset.StandardCharsets.UTF_8);
+        if (ctype.contains("html") || ctype.contains("xml") || ctype.contains("xhtml")) {
+            var charset = StreamingText.detectCharset(in, ctype, true);
+            var reader = new InputStreamReader(in, charset);
+            // HTML -> article body only (headings and lists kept); navigation, banners and sidebars dropped.
+            // The DOM needs the page in memory, so markup past maxHtmlChars is cut (Jsoup closes open tags).
+            if (mainContent && ctype.contains("html")) {
+                return mainContent(url, reader);
             }
+            // XML, or main-content off -> single-pass tag stripper; stops reading once maxTextChars are collected
+            return StreamingText.htmlToText(reader, maxTextChars);
+        }
 
-            // Unknown/binary
-            return "[unsupported content-type: " + ctype + " for " + url + "]";
-        } catch (Exception e) {
-            return "[error fetching " + url + ": " + e.getMessage() + "]";
+        // Plain text
+        if (ctype.startsWith("text/")) {
+            var charset = StreamingText.detectCharset(in, ctype, false);
+            return StreamingText.readText(new InputStreamReader(in, charset), maxTextChars);
+        }
+
+        // Unknown/binary
+        return null;
+    }
+
+    private String pdfToText(StreamingText.CappedInputStream in) throws IOException {
+        Path tmp = Files.createTempFile("web-fetch-", ".pdf");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            if (in.truncated()) throw new TooLarge("PDF larger than " + maxDownloadBytes + " bytes");
+            var memory = MemoryUsageSetting.setupMixed(PDF_MAIN_MEMORY_BYTES);
+            try (var doc = Loader.loadPDF(tmp.toFile(), memory.streamCache)) {
+                var stripper = new PDFTextStripper();
+                var sb = new StringBuilder();
+                int pages = doc.getNumberOfPages();
+                for (int p = 1; p <= pages && sb.length() < maxTextChars; p++) {
+                    stripper.setStartPage(p);
+                    stripper.setEndPage(p);
+                    sb.append(stripper.getText(doc));
+                }
+                if (sb.length() > maxTextChars) sb.setLength(maxTextChars);
+                return sb.toString();
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
+    public WebPageCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
     public static String normalizeUrl(String s) {
         if (s == null) return null;
         String t = s.trim();
@@ -71,4 +255,85 @@ public class WebFetchService {
         if (url == null) return "";
         return fetchText(url); // your existing fetcher that returns plain text
     }
+
+    /**
+     * Fetches all links concurrently (overall and per-host caps) under one shared deadline.
+     * Results come back in input order; links still running when the budget runs out are
+     * cancelled and reported as TIMED_OUT so the turn can proceed with what finished.
+     */
+    public List<FetchResult> fetchAll(List<String> raws) {
+        return fetchAll(raws, budget);
+    }
+
+    public List<FetchResult> fetchAll(List<String> raws, Duration budget) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        var unique = new LinkedHashSet<>(raws);
+        var jobs = new ArrayList<String>();
+        var futures = new ArrayList<Future<FetchResult>>();
+        for (String raw : unique) {
+            String url = normalizeUrl(raw);
+            if (url == null) continue;
+            jobs.add(raw);
+            futures.add(pool.submit(() -> fetchWithinDeadline(raw, url, deadline)));
+        }
+
+        var results = new ArrayList<FetchResult>(futures.size());
+        long started = System.nanoTime();
+        for (int i = 0; i < futures.size(); i++) {
+            var f = futures.get(i);
+            String raw = jobs.get(i);
+            FetchResult r;
+            try {
+                r = f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | CancellationException e) {
+                f.cancel(true);
+                r = new FetchResult(raw, normalizeUrl(raw), "", FetchStatus.TIMED_OUT, elapsedMillis(started));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                f.cancel(true);
+                r = new FetchResult(raw, normalizeUrl(raw), "", FetchStatus.TIMED_OUT, elapsedMillis(started));
+            } catch (ExecutionException e) {
+                r = new FetchResult(raw, normalizeUrl(raw), "[error fetching " + raw + ": " + e.getCause() + "]",
+                        FetchStatus.FAILED, elapsedMillis(started));
+            }
+            log.info("link fetch {} {} in {} ms", r.status(), r.url(), r.millis());
+            Timer.builder("web.fetch")
+                    .description("Link fetch duration, cache hits included")
+                    .tag("status", r.status().name().toLowerCase())
+                    .register(registry)
+                    .record(r.millis(), TimeUnit.MILLISECONDS);
+            results.add(r);
+        }
+        return results;
+    }
+
+    private FetchResult fetchWithinDeadline(String raw, String url, long deadline) throws InterruptedException {
+        long t0 = System.nanoTime();
+        var permits = hostPermits.computeIfAbsent(hostOf(url), h -> new Semaphore(maxPerHost));
+        if (!permits.tryAcquire(Math.max(0, deadline - t0), TimeUnit.NANOSECONDS)) {
+            return new FetchResult(raw, url, "", FetchStatus.TIMED_OUT, elapsedMillis(t0));
+        }
+        try {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return new FetchResult(raw, url, "", FetchStatus.TIMED_OUT, elapsedMillis(t0));
+            var timeout = Duration.ofNanos(Math.min(remaining, PER_FETCH_TIMEOUT.toNanos()));
+            var fetched = fetch(url, timeout);
+            return new FetchResult(raw, url, fetched.text(), fetched.status(), elapsedMillis(t0));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
 }
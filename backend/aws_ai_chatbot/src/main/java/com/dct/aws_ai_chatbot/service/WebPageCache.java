@@ -0,0 +1,160 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-bounded LRU of extracted page text keyed by normalized URL.
+ * Freshness follows Cache-Control (no-store, no-cache, max-age, s-maxage) and Expires, with a
+ * Last-Modified heuristic otherwise. Stale entries keep their ETag / Last-Modified so the
+ * fetcher can revalidate with a conditional GET and skip download + parse on 304.
+ */
+@Component
+public class WebPageCache {
+
+    public record Stats(long hits, long revalidated, long misses, int entries, long bytes, long maxBytes) {
+        @JsonProperty
+        public double hitRate() {
+            long total = hits + revalidated + misses;
+            return total == 0 ? 0.0 : (double) (hits + revalidated) / total;
+        }
+    }
+
+    /** Cached page text plus the validators needed to revalidate it. */
+    public record Entry(String text, String etag, String lastModified, long expiresAtMillis) {
+        public boolean isFresh() { return System.currentTimeMillis() < expiresAtMillis; }
+        long bytes() { return 2L * text.length() + 64; }
+    }
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|,)\\s*(?:s-maxage|max-age)\\s*=\\s*\"?(\\d+)");
+
+    private final long maxBytes;
+    private final long defaultTtlMillis;
+
+    // no TTL here: stale entries stay until evicted so they can be revalidated
+    private final BoundedLru<Entry> lru;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public WebPageCache(
+            @Value("${app.web.cache.max-bytes:33554432}") long maxBytes,
+            @Value("${app.web.cache.default-ttl-seconds:300}") long defaultTtlSeconds
+    ) {
+        this.maxBytes = maxBytes;
+        this.defaultTtlMillis = defaultTtlSeconds * 1000L;
+        this.lru = new BoundedLru<>(Integer.MAX_VALUE, maxBytes, -1, Entry::bytes);
+    }
+
+    /** Lower-cases scheme and host, drops default ports and the fragment. */
+    public static String normalize(String url) {
+        try {
+            var u = URI.create(url.trim()).normalize();
+            String scheme = u.getScheme() == null ? "https" : u.getScheme().toLowerCase(Locale.ROOT);
+            String host = u.getHost() == null ? "" : u.getHost().toLowerCase(Locale.ROOT);
+            int port = u.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) port = -1;
+            String path = (u.getRawPath() == null || u.getRawPath().isEmpty()) ? "/" : u.getRawPath();
+            var sb = new StringBuilder(scheme).append("://").append(host);
+            if (port != -1) sb.append(':').append(port);
+            sb.append(path);
+            if (u.getRawQuery() != null) sb.append('?').append(u.getRawQuery());
+            return sb.toString();
+        } catch (IllegalArgumentException e) {
+            return url.trim();
+        }
+    }
+
+    public Entry get(String key) {
+        return lru.get(key);
+    }
+
+    public void recordHit()         { hits.incrementAndGet(); }
+    public void recordRevalidated() { revalidated.incrementAndGet(); }
+    public void recordMiss()        { misses.incrementAndGet(); }
+
+    /** Stores freshly extracted text unless the response forbids it. */
+    public void put(String key, String text, HttpHeaders headers) {
+        if (text == null || isNoStore(headers)) return;
+        lru.put(key, new Entry(text,
+                headers.firstValue("etag").orElse(null),
+                headers.firstValue("last-modified").orElse(null),
+                expiresAt(headers)));
+    }
+
+    /** Extends a revalidated (304) entry using the new response headers; keeps the old validators if absent. */
+    public void refresh(String key, Entry old, HttpHeaders headers) {
+        if (isNoStore(headers)) {
+            remove(key);
+            return;
+        }
+        lru.put(key, new Entry(old.text(),
+                headers.firstValue("etag").orElse(old.etag()),
+                headers.firstValue("last-modified").orElse(old.lastModified()),
+                expiresAt(headers)));
+    }
+
+    public void remove(String key) {
+        lru.remove(key);
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), revalidated.get(), misses.get(), lru.size(), lru.weight(), maxBytes);
+    }
+
+    // ----------------------------
+    // internals
+    // ----------------------------
+
+    private static boolean isNoStore(HttpHeaders headers) {
+        String cc = headers.firstValue("cache-control").orElse("").toLowerCase(Locale.ROOT);
+        return cc.contains("no-store") || cc.contains("private");
+    }
+
+    private long expiresAt(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        String cc = headers.firstValue("cache-control").orElse("").toLowerCase(Locale.ROOT);
+        if (cc.contains("no-cache") || cc.contains("must-revalidate") && cc.contains("max-age=0")) return now;
+
+        var m = MAX_AGE.matcher(cc);
+        if (m.find()) {
+            long age = headers.firstValue("age").map(WebPageCache::parseLong).orElse(0L);
+            return now + Math.max(0, parseLong(m.group(1)) - age) * 1000L;
+        }
+
+        var expires = headers.firstValue("expires").map(WebPageCache::parseHttpDate).orElse(null);
+        if (expires != null) return Math.max(now, expires);
+
+        // Heuristic freshness (RFC 9111 4.2.2): 10% of the time since Last-Modified, capped by the default TTL.
+        var lastModified = headers.firstValue("last-modified").map(WebPageCache::parseHttpDate).orElse(null);
+        if (lastModified != null) return now + Math.min(defaultTtlMillis, Math.max(0, (now - lastModified) / 10));
+
+        return now + defaultTtlMillis;
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static Long parseHttpDate(String s) {
+        try {
+            return ZonedDateTime.parse(s.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
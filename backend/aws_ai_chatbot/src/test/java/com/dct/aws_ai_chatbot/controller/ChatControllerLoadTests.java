@@ -0,0 +1,168 @@
+package com.dct.aws_ai_chatbot.controller;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.service.BedrockAdmission;
+import com.dct.aws_ai_chatbot.service.ClaudeService;
+import com.dct.aws_ai_chatbot.service.CompletionCache;
+import com.dct.aws_ai_chatbot.service.ModelRouter;
+import com.dct.aws_ai_chatbot.service.PromptBudgetPlanner;
+import com.dct.aws_ai_chatbot.service.RequestStages;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test for the non-blocking completion path: a small "servlet pool" drives many concurrent completions
+ * against a slow Converse stub. In-flight calls must not be capped by the number of request threads.
+ */
+class ChatControllerLoadTests {
+
+    private static final int REQUEST_THREADS = 4;
+    private static final int REQUESTS = 40;
+    private static final long BEDROCK_MILLIS = 1500;
+
+    private static final byte[] RESPONSE = """
+            {"output":{"message":{"role":"assistant","content":[{"text":"ok"}]}},"stopReason":"end_turn",
+             "usage":{"inputTokens":12,"outputTokens":1,"totalTokens":13},"metrics":{"latencyMs":5}}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer stub;
+    private ExecutorService stubThreads;
+    private ExecutorService requestThreads;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private RequestStages stages;
+    private ChatController controller;
+
+    @BeforeEach
+    void start() throws Exception {
+        stubThreads = Executors.newCachedThreadPool();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS * 2);
+        stub.setExecutor(stubThreads);
+        stub.createContext("/", ex -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                ex.getRequestBody().readAllBytes();
+                Thread.sleep(BEDROCK_MILLIS);
+                ex.getResponseHeaders().add("Content-Type", "application/json");
+                ex.sendResponseHeaders(200, RESPONSE.length);
+                ex.getResponseBody().write(RESPONSE);
+                served.incrementAndGet();
+            } catch (Exception ignored) {
+                // cancelled call: the client closed the connection
+            } finally {
+                inFlight.decrementAndGet();
+                ex.close();
+            }
+        });
+        stub.start();
+
+        var async = BedrockRuntimeAsyncClient.builder().region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(URI.create("http://127.0.0.1:" + stub.getAddress().getPort()))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().protocol(Protocol.HTTP1_1))
+                .build();
+        // admission starts above REQUESTS: this test is about request threads, not the Bedrock limit
+        var admission = new BedrockAdmission(registry, 64, 2, 128, 0.7, 500, 3, 250, 4000);
+        var claude = new ClaudeService(null, async, new PromptBudgetPlanner(200_000, 2_000, 4), admission,
+                new ModelRouter(registry, "stub-model", "", 4000, 1024, 50, 10, 0.3, 8000, 30000), registry);
+
+        // links, extraction and memory are not touched without URLs, files or a thread id
+        stages = new RequestStages(registry, 25_000, 64);
+        controller = new ChatController(claude, null, null, null, null,
+                new CompletionCache(512, 4_000_000, 120), stages, registry);
+        ReflectionTestUtils.setField(controller, "completionTimeoutMs", 30_000L);
+        requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+    }
+
+    @AfterEach
+    void stop() {
+        requestThreads.shutdownNow();
+        stages.shutdown();
+        stub.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    @Test
+    void inFlightCompletionsAreNotBoundedByRequestThreads() throws Exception {
+        var calls = new ArrayList<Callable<DeferredResult<ResponseEntity<Map<String, Object>>>>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            var req = new ChatRequest(List.of(new Message("user", "question " + i)), "sys", 64, null, null);
+            calls.add(() -> controller.chatCompletion(req, null, null));
+        }
+
+        long t0 = System.nanoTime();
+        var results = new ArrayList<CompletableFuture<Object>>();
+        for (var f : requestThreads.invokeAll(calls)) results.add(await(f.get()));
+        long handedOff = System.nanoTime() - t0;
+
+        for (var r : results) {
+            var resp = (ResponseEntity<?>) r.get(30, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.OK, resp.getStatusCode());
+            assertEquals("ok", ((Map<?, ?>) resp.getBody()).get("text"));
+        }
+        long elapsed = System.nanoTime() - t0;
+
+        assertTrue(handedOff < TimeUnit.MILLISECONDS.toNanos(BEDROCK_MILLIS),
+                "request threads returned before any generation finished");
+        assertEquals(REQUESTS, served.get());
+        assertTrue(maxInFlight.get() > REQUEST_THREADS * 4, "max in flight " + maxInFlight.get());
+        // a blocking pool of 4 needs REQUESTS / 4 rounds of BEDROCK_MILLIS
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(BEDROCK_MILLIS * REQUESTS / REQUEST_THREADS / 2),
+                "elapsed " + elapsed / 1_000_000 + " ms");
+    }
+
+    @Test
+    void timedOutCompletionIsCancelled() throws Exception {
+        ReflectionTestUtils.setField(controller, "completionTimeoutMs", 200L);
+        var req = new ChatRequest(List.of(new Message("user", "slow one")), "sys", 64, null, null);
+
+        var resp = (ResponseEntity<?>) await(controller.chatCompletion(req, null, null)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, resp.getStatusCode());
+        assertEquals(false, ((Map<?, ?>) resp.getBody()).get("ok"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.find("bedrock.call").tag("outcome", "cancelled").timer() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(registry.find("bedrock.call").tag("outcome", "cancelled").timer() != null,
+                "the Bedrock call was cancelled");
+    }
+
+    private static CompletableFuture<Object> await(DeferredResult<?> result) {
+        var done = new CompletableFuture<Object>();
+        result.setResultHandler(done::complete);
+        return done;
+    }
+}
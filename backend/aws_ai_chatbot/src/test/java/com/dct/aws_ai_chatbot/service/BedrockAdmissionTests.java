@@ -0,0 +1,169 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BedrockAdmissionTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private BedrockAdmission admission(int initial, int max, int maxQueue) {
+        return new BedrockAdmission(registry, initial, 1, max, 0.5, maxQueue, 3, 10, 50);
+    }
+
+    @Test
+    void throttlesShrinkTheLimitAndBusySuccessesGrowIt() throws Exception {
+        var a = admission(8, 16, 100);
+        a.acquire("t").get().release(BedrockAdmission.Outcome.THROTTLED);
+        assertEquals(4, a.stats().limit());
+
+        // successes only grow the limit when it was fully used
+        a.acquire("t").get().release(BedrockAdmission.Outcome.OK);
+        assertEquals(4, a.stats().limit());
+        var held = new ArrayList<BedrockAdmission.Permit>();
+        for (int i = 0; i < 4; i++) held.add(a.acquire("t").get());
+        for (int round = 0; round < 8; round++) {
+            held.remove(0).release(BedrockAdmission.Outcome.OK);
+            held.add(a.acquire("t").get(1, TimeUnit.SECONDS));
+        }
+        assertTrue(a.stats().limit() > 4, "limit " + a.stats().limit());
+        assertEquals(1, a.stats().throttled());
+        assertEquals(4.0, registry.get("bedrock.admission.in.flight").gauge().value());
+    }
+
+    @Test
+    void queuedCallsAreServedRoundRobinAcrossThreads() throws Exception {
+        var a = admission(1, 1, 100);
+        var first = a.acquire("heavy").get();
+        var heavy1 = a.acquire("heavy");
+        var heavy2 = a.acquire("heavy");
+        var heavy3 = a.acquire("heavy");
+        var light = a.acquire("light");
+        assertEquals(4, a.stats().queued());
+
+        first.release(BedrockAdmission.Outcome.OK);
+        assertTrue(heavy1.isDone());
+        assertFalse(light.isDone());
+
+        heavy1.get().release(BedrockAdmission.Outcome.OK);
+        assertTrue(light.isDone(), "light thread goes before heavy's second call");
+        assertFalse(heavy2.isDone());
+
+        light.get().release(BedrockAdmission.Outcome.OK);
+        assertTrue(heavy2.isDone());
+        assertFalse(heavy3.isDone());
+        assertEquals(1, a.stats().queued());
+    }
+
+    @Test
+    void cancelledWaitersLeaveAndFullQueuesReject() throws Exception {
+        var a = admission(1, 1, 2);
+        var held = a.acquire("x").get();
+        var waiting = a.acquire("x");
+        var cancelled = a.acquire("y");
+        var rejected = a.acquire("z");
+
+        var e = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(1, a.stats().rejected());
+
+        cancelled.cancel(true);
+        assertEquals(1, a.stats().queued());
+        held.release(BedrockAdmission.Outcome.OK);
+        assertTrue(waiting.isDone());
+        assertEquals(0, a.stats().queued());
+        assertEquals(1, a.stats().inFlight());
+    }
+
+    @Test
+    void interruptedSyncCallLeavesTheQueue() throws Exception {
+        var a = admission(1, 1, 100);
+        var claude = new ClaudeService(null, null, new PromptBudgetPlanner(200_000, 2_000, 4), a,
+                new ModelRouter(registry, "stub-model", "", 4000, 1024, 50, 10, 0.3, 8000, 30000), registry);
+        var held = a.acquire("x").get();
+
+        var answer = new CompletableFuture<String>();
+        var caller = new Thread(() -> answer.complete(
+                claude.chatOnce(new ChatRequest(List.of(new Message("user", "hi")), null, 16, null, null))));
+        caller.start();
+        while (a.stats().queued() == 0) Thread.sleep(5);
+        caller.interrupt();
+
+        assertEquals(ClaudeService.ERROR_PREFIX + "interrupted", answer.get(5, TimeUnit.SECONDS));
+        assertEquals(0, a.stats().queued());
+        held.release(BedrockAdmission.Outcome.OK);
+        assertEquals(0, a.stats().inFlight(), "no permit was granted to the interrupted caller");
+    }
+
+    @Test
+    void throttledCallIsRetriedAndShrinksTheLimit() throws Exception {
+        var attempts = new AtomicInteger();
+        var stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/", ex -> {
+            ex.getRequestBody().readAllBytes();
+            boolean throttle = attempts.incrementAndGet() == 1;
+            byte[] out = (throttle
+                    ? "{\"message\":\"Too many requests, please wait before trying again.\"}"
+                    : "{\"output\":{\"message\":{\"role\":\"assistant\",\"content\":[{\"text\":\"ok\"}]}},"
+                      + "\"stopReason\":\"end_turn\",\"usage\":{\"inputTokens\":5,\"outputTokens\":1,\"totalTokens\":6}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            if (throttle) ex.getResponseHeaders().add("x-amzn-ErrorType", "ThrottlingException");
+            ex.sendResponseHeaders(throttle ? 429 : 200, out.length);
+            ex.getResponseBody().write(out);
+            ex.close();
+        });
+        stub.start();
+        try (var async = BedrockRuntimeAsyncClient.builder().region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(URI.create("http://127.0.0.1:" + stub.getAddress().getPort()))
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry()))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().protocol(Protocol.HTTP1_1))
+                .build()) {
+            var a = admission(8, 16, 100);
+            var claude = new ClaudeService(null, async, new PromptBudgetPlanner(200_000, 2_000, 4), a,
+                    new ModelRouter(registry, "stub-model", "", 4000, 1024, 50, 10, 0.3, 8000, 30000), registry);
+
+            CompletableFuture<String> answer = claude.chatOnceAsync(new WrappedRequest(
+                    new ChatRequest(List.of(new Message("user", "hi")), "sys", 16, 0.0, null), null, null), "t1");
+
+            assertEquals("ok", answer.get(10, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+            assertEquals(1, a.stats().throttled());
+            assertEquals(1, a.stats().retries());
+            assertEquals(4, a.stats().limit());
+            assertEquals(0, a.stats().inFlight());
+            assertEquals(1.0, registry.get("bedrock.retries").tag("reason", "throttled").counter().count());
+        } finally {
+            stub.stop(0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs ClaudeService against a local Converse stub to check cache checkpoints, usage accounting and metrics. */
+class ClaudeServicePromptCacheTests {
+
+    private static final String RESPONSE = """
+            {"output":{"message":{"role":"assistant","content":[{"text":"ok"}]}},
+             "stopReason":"end_turn",
+             "usage":{"inputTokens":40,"outputTokens":2,"totalTokens":42,
+                      "cacheReadInputTokens":1800,"cacheWriteInputTokens":0},
+             "metrics":{"latencyMs":3}}""";
+
+    private HttpServer stub;
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private ClaudeService claude;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void start() throws Exception {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/", ex -> {
+            bodies.add(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] out = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, out.length);
+            ex.getResponseBody().write(out);
+            ex.close();
+        });
+        stub.start();
+
+        var endpoint = URI.create("http://127.0.0.1:" + stub.getAddress().getPort());
+        var creds = StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test"));
+        var sync = BedrockRuntimeClient.builder().region(Region.US_EAST_1)
+                .credentialsProvider(creds).endpointOverride(endpoint).build();
+        var async = BedrockRuntimeAsyncClient.builder().region(Region.US_EAST_1)
+                .credentialsProvider(creds).endpointOverride(endpoint).build();
+
+        claude = new ClaudeService(sync, async, new PromptBudgetPlanner(200_000, 2_000, 4),
+                new BedrockAdmission(registry, 16, 2, 128, 0.7, 500, 3, 250, 4000),
+                new ModelRouter(registry, "stub-model", "", 4000, 1024, 50, 10, 0.3, 8000, 30000), registry);
+        ReflectionTestUtils.setField(claude, "promptCache", true);
+        ReflectionTestUtils.setField(claude, "cacheMinTokens", 1024);
+    }
+
+    @AfterEach
+    void stop() {
+        stub.stop(0);
+    }
+
+    @Test
+    void stablePrefixIsByteIdenticalAndCheckpointed() {
+        var memory = List.of(ContextSegment.of("guide.pdf", "Install the agent before configuring it. ".repeat(200)));
+        var turn1 = new ChatRequest(List.of(new Message("user", "How do I install it?")), "sys", 256, 0.0, null);
+        var turn2 = new ChatRequest(List.of(
+                new Message("user", "How do I install it?"),
+                new Message("assistant", "Install the agent first."),
+                new Message("user", "And then?")), "sys", 256, 0.0, null);
+
+        assertEquals("ok", claude.chatOnce(new WrappedRequest(turn1, memory,
+                List.of(ContextSegment.of(null, "--- LINKS FETCHED THIS TURN ---"), ContextSegment.of("x", "x")))));
+        assertEquals("ok", claude.chatOnce(new WrappedRequest(turn2, memory, null)));
+
+        String first = bodies.get(0);
+        String second = bodies.get(1);
+        assertTrue(first.contains("\"cachePoint\""), first);
+
+        // everything up to the persisted-context checkpoint is the same bytes on both turns
+        int cut = first.indexOf("\"cachePoint\"");
+        assertEquals(first.substring(0, cut), second.substring(0, cut));
+        // per-turn material comes after the checkpoint
+        assertFalse(first.substring(0, cut).contains("LINKS FETCHED THIS TURN"));
+        // each segment is its own text block, not spliced into one context string
+        assertTrue(first.contains("{\"text\":\"=== x ===\\nx\"}"), first);
+
+        var usage = claude.usageStats();
+        assertEquals(2, usage.calls());
+        assertEquals(3600, usage.cacheReadInputTokens());
+        assertEquals(80, usage.inputTokens());
+        assertEquals(3600, registry.get("bedrock.tokens").tag("type", "cache_read").counter().count());
+        assertEquals(2, registry.get("bedrock.server.latency").timer().count());
+    }
+}
@@ -0,0 +1,267 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentExtractServiceTests {
+
+    private final List<ContentExtractService> services = new ArrayList<>();
+
+    @TempDir
+    Path spillDir;
+
+    @AfterEach
+    void stop() {
+        services.forEach(ContentExtractService::shutdown);
+    }
+
+    private ContentExtractService service(long budgetMs, int maxPages, int pagesPerTask) {
+        return service(null, budgetMs, maxPages, pagesPerTask, 2, 4_194_304);
+    }
+
+    private ContentExtractService service(OcrEngine ocr, long budgetMs, int maxPages, int pagesPerTask,
+                                          int ocrInFlight, long spillThreshold) {
+        var s = new ContentExtractService(ocr, new ExtractionCache(64, 8_000_000, 60), new SimpleMeterRegistry(),
+                4, budgetMs, maxPages, pagesPerTask, 32, 72, ocrInFlight, spillThreshold, spillDir.toString(), 1_048_576);
+        services.add(s);
+        return s;
+    }
+
+    @Test
+    void pageRangesMergeInOrderAndMatchASinglePass() throws Exception {
+        var pdf = new MockMultipartFile("file", "long.pdf", "application/pdf", pdf(40));
+
+        String single = service(60_000, 1000, 1000).extractText(pdf);
+        String ranged = service(60_000, 1000, 3).extractText(pdf);
+
+        assertEquals(single, ranged);
+        assertTrue(ranged.indexOf("Marker page 9 ") < ranged.indexOf("Marker page 10 "));
+        assertTrue(ranged.contains("Marker page 40 "));
+    }
+
+    @Test
+    void pageCapTruncatesLongDocuments() throws Exception {
+        var pdf = new MockMultipartFile("file", "long.pdf", "application/pdf", pdf(30));
+
+        var extraction = service(60_000, 10, 4).extract(pdf);
+
+        assertTrue(extraction.text().contains("Marker page 10 "));
+        assertFalse(extraction.text().contains("Marker page 11 "));
+        assertTrue(extraction.text().endsWith("[truncated: first 10 of 30 pages extracted]"));
+        assertNotNull(extraction.digest(), "a page-capped result is deterministic and cacheable");
+    }
+
+    @Test
+    void exhaustedBudgetSkipsRangesAndIsNotCached() throws Exception {
+        var service = service(0, 1000, 2);
+        var extraction = service.extract(new MockMultipartFile("file", "long.pdf", "application/pdf", pdf(12)));
+
+        assertNull(extraction.digest());
+        assertTrue(extraction.text().contains("[extraction time budget exceeded: 12 of 12 pages skipped]"));
+        assertEquals(0, service.cacheStats().entries());
+    }
+
+    @Test
+    void extractAllKeepsInputOrder() throws Exception {
+        var uploads = new ArrayList<MultipartFile>();
+        for (int i = 1; i <= 5; i++) {
+            uploads.add(new MockMultipartFile("file", "f" + i + ".pdf", "application/pdf", pdf(i * 3)));
+        }
+        uploads.add(new MockMultipartFile("file", "notes.txt", "text/plain", "plain notes".getBytes()));
+
+        var results = service(60_000, 1000, 2).extractAll(uploads);
+
+        assertEquals(6, results.size());
+        for (int i = 1; i <= 5; i++) {
+            String text = results.get(i - 1).text();
+            assertTrue(text.contains("Marker page " + (i * 3) + " "), text);
+            assertFalse(text.contains("Marker page " + (i * 3 + 1) + " "));
+        }
+        assertEquals("plain notes", results.get(5).text());
+    }
+
+    @Test
+    void scannedPagesAreOcrdConcurrentlyAndMergedInPageOrder() throws Exception {
+        var calls = new AtomicInteger();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        OcrEngine ocr = image -> {
+            int n = calls.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+                return "OCR text " + n;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+        // pages 2, 4, ..., 12 are image-only
+        var pdf = new MockMultipartFile("file", "scan.pdf", "application/pdf", pdf(12, p -> p % 2 == 0));
+
+        String text = service(ocr, 60_000, 1000, 3, 2, 4_194_304).extractText(pdf);
+
+        assertEquals(6, calls.get(), "only image-only pages go to OCR");
+        assertTrue(maxInFlight.get() <= 2, "max in flight " + maxInFlight.get());
+        for (int p = 1; p <= 11; p += 2) assertTrue(text.contains("Marker page " + p + " "), text);
+        int last = -1;
+        for (int p = 1; p <= 12; p++) {
+            int at = p % 2 == 0 ? text.indexOf("OCR text", last + 1) : text.indexOf("Marker page " + p + " ");
+            assertTrue(at > last, "page " + p + " is in order");
+            last = at;
+        }
+    }
+
+    @Test
+    void failedOcrMarksTheExtractionPartial() throws Exception {
+        OcrEngine ocr = image -> {
+            throw new IllegalStateException("Textract unavailable");
+        };
+        var service = service(ocr, 60_000, 1000, 3, 2, 4_194_304);
+        var pdf = new MockMultipartFile("file", "scan.pdf", "application/pdf", pdf(4, p -> p == 2));
+
+        var extraction = service.extract(pdf);
+
+        assertNull(extraction.digest(), "not cached, not treated as persisted");
+        assertTrue(extraction.text().contains("Marker page 3 "));
+        assertTrue(extraction.text().endsWith("[OCR failed for 1 of 4 pages: embedded text only]"), extraction.text());
+        assertEquals(0, service.cacheStats().entries());
+    }
+
+    @Test
+    void spilledUploadsMatchInMemoryOnesAndLeaveNoTempFiles() throws Exception {
+        var pdf = new MockMultipartFile("file", "long.pdf", "application/pdf", pdf(20));
+        var docx = new MockMultipartFile("file", "notes.docx",
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document", docx("docx paragraph"));
+        var txt = new MockMultipartFile("file", "notes.txt", "text/plain", "plain notes \u00e9".getBytes(StandardCharsets.UTF_8));
+
+        var inMemory = service(null, 60_000, 1000, 4, 2, Long.MAX_VALUE).extractAll(List.of(pdf, docx, txt));
+        var spilled = service(null, 60_000, 1000, 4, 2, 0).extractAll(List.of(pdf, docx, txt));
+
+        assertEquals(inMemory, spilled, "same text and same digests");
+        assertTrue(spilled.get(1).text().contains("docx paragraph"));
+        assertEquals("plain notes \u00e9", spilled.get(2).text());
+        try (var left = Files.list(spillDir)) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    void heapAllocationStaysFlatAcrossUploadSizes() throws Exception {
+        // same text, 40 MB more of (never-read) embedded payload
+        var small = new MockMultipartFile("file", "small.pdf", "application/pdf", pdfWithPayload(2 << 20));
+        var large = new MockMultipartFile("file", "large.pdf", "application/pdf", pdfWithPayload(42 << 20));
+        var service = service(null, 60_000, 1000, 1000, 2, 1 << 20);
+        service.extractText(small); // warm-up: class loading, fonts
+
+        long smallAlloc = allocatedBy(() -> service.extractText(small));
+        long largeAlloc = allocatedBy(() -> service.extractText(large));
+
+        long growth = largeAlloc - smallAlloc;
+        assertTrue(growth < (40 << 20) / 10,
+                "heap allocation grew by " + (growth >> 10) + " KiB for 40 MiB more upload (small "
+                        + (smallAlloc >> 10) + " KiB, large " + (largeAlloc >> 10) + " KiB)");
+    }
+
+    private static long allocatedBy(Runnable work) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        work.run();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    /** A one-page text PDF carrying {@code payloadBytes} of incompressible data in an unreferenced-by-pages stream. */
+    private static byte[] pdfWithPayload(int payloadBytes) throws IOException {
+        var font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            var page = new PDPage();
+            doc.addPage(page);
+            try (var cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(font, 12);
+                cs.newLineAtOffset(50, 700);
+                cs.showText("Marker page 1 of the test document.");
+                cs.endText();
+            }
+            var payload = new byte[payloadBytes];
+            new Random(1).nextBytes(payload);
+            var stream = doc.getDocument().createCOSStream();
+            try (var os = stream.createRawOutputStream()) {
+                os.write(payload);
+            }
+            doc.getDocumentCatalog().getCOSObject().setItem(COSName.getPDFName("Payload"), stream);
+            doc.save(out, CompressParameters.NO_COMPRESSION);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] docx(String paragraph) throws IOException {
+        try (var doc = new XWPFDocument(); var out = new ByteArrayOutputStream()) {
+            doc.createParagraph().createRun().setText(paragraph);
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        return pdf(pages, p -> false);
+    }
+
+    /** Pages are text ("Marker page N ...") unless {@code scanned} says they're a bare image. */
+    private static byte[] pdf(int pages, IntPredicate scanned) throws IOException {
+        var font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (var doc = new PDDocument(); var out = new ByteArrayOutputStream()) {
+            for (int p = 1; p <= pages; p++) {
+                var page = new PDPage();
+                doc.addPage(page);
+                try (var cs = new PDPageContentStream(doc, page)) {
+                    if (scanned.test(p)) {
+                        var image = new BufferedImage(40, 20, BufferedImage.TYPE_BYTE_GRAY);
+                        cs.drawImage(LosslessFactory.createFromImage(doc, image), 50, 600, 200, 100);
+                        continue;
+                    }
+                    cs.beginText();
+                    cs.setFont(font, 12);
+                    cs.newLineAtOffset(50, 700);
+                    cs.showText("Marker page " + p + " of the test document.");
+                    cs.endText();
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+}
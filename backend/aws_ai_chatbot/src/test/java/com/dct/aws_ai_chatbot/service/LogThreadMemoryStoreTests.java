@@ -0,0 +1,158 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.service.ThreadMemoryService.Segment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogThreadMemoryStoreTests {
+
+    @TempDir
+    Path dir;
+
+    private LogThreadMemoryStore open(long segmentBytes) throws IOException {
+        return new LogThreadMemoryStore(dir, segmentBytes, false, 1_000_000, Duration.ofDays(1), 0, 0.5);
+    }
+
+    @Test
+    void threadsSurviveReopenAndClearWinsOverOlderRecords() throws Exception {
+        try (var store = open(1 << 20)) {
+            store.append("a", new Segment("one.pdf", "first"));
+            store.append("b", new Segment("other.txt", "unrelated"));
+            store.append("a", new Segment("two.pdf", "second é", "digest-1"));
+            store.append("c", new Segment("gone.txt", "cleared"));
+            store.clear("c");
+        }
+        try (var store = open(1 << 20)) {
+            var a = store.load("a");
+            assertEquals(List.of(new Segment("one.pdf", "first"), new Segment("two.pdf", "second é", "digest-1")),
+                    a.segments());
+            assertEquals(Set.of("digest-1"), a.digests());
+            assertEquals(List.of(new Segment("other.txt", "unrelated")), store.load("b").segments());
+            assertNull(store.load("c"));
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnReopen() throws Exception {
+        try (var store = open(1 << 20)) {
+            store.append("a", new Segment("one.pdf", "kept"));
+            store.append("a", new Segment("two.pdf", "torn by the crash"));
+        }
+        Path file;
+        try (var files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        try (var ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 5);
+        }
+
+        try (var store = open(1 << 20)) {
+            assertEquals(List.of(new Segment("one.pdf", "kept")), store.load("a").segments());
+            store.append("a", new Segment("three.pdf", "after recovery"));
+        }
+        try (var store = open(1 << 20)) {
+            assertEquals(List.of("kept", "after recovery"),
+                    store.load("a").segments().stream().map(Segment::text).toList());
+        }
+    }
+
+    @Test
+    void compactionDropsDeadFilesAndKeepsAppendOrder() throws Exception {
+        String text = "x".repeat(1000);
+        try (var store = open(4096)) {
+            for (int i = 0; i < 20; i++) {
+                store.append("keep", new Segment("k" + i, text));
+                store.append("drop", new Segment("d" + i, text));
+                store.append("drop", new Segment("e" + i, text));
+            }
+            store.clear("drop");
+            var before = store.stats();
+
+            store.compact();
+
+            var after = store.stats();
+            assertTrue(after.bytes() < before.bytes() * 0.7, before + " -> " + after);
+            assertTrue(after.compactions() > 0);
+            assertEquals(20, store.load("keep").segments().size());
+        }
+        try (var store = open(4096)) {
+            var labels = store.load("keep").segments().stream().map(Segment::label).toList();
+            for (int i = 0; i < 20; i++) assertEquals("k" + i, labels.get(i));
+            assertNull(store.load("drop"), "the clear still hides records in files that were not compacted");
+        }
+    }
+
+    @Test
+    void evictedThreadsAreRestoredFromTheStore() throws Exception {
+        try (var store = open(1 << 20)) {
+            // 1 KB heap budget: writing a second thread evicts the first from the heap
+            var memory = new ThreadMemoryService(store, 10_000, 1024, 60);
+            assertTrue(memory.appendOnce("a", "digest-a", "a.txt", "a".repeat(400)));
+            memory.append("b", "b.txt", "b".repeat(400));
+            assertEquals(1, memory.stats().evictedThreads());
+
+            assertEquals("=== a.txt ===\n" + "a".repeat(400), memory.context("a").get(0).block());
+            assertFalse(memory.appendOnce("a", "digest-a", "a.txt", "a".repeat(400)), "digests come back with the thread");
+
+            memory.clear("a");
+            assertTrue(memory.context("a").isEmpty());
+        }
+    }
+
+    @Test
+    void concurrentSyncedWritersShareForcesAndReadersSeeWholeRecords() throws Exception {
+        int writers = 8;
+        int perWriter = 50;
+        try (var store = new LogThreadMemoryStore(dir, 4096, true, 1_000_000, Duration.ofDays(1), 0, 0.5)) {
+            var pool = Executors.newFixedThreadPool(writers + 1);
+            try {
+                var done = new ArrayList<Future<?>>();
+                for (int w = 0; w < writers; w++) {
+                    String thread = "t" + w;
+                    done.add(pool.submit(() -> {
+                        for (int i = 0; i < perWriter; i++) store.append(thread, new Segment("s" + i, "text " + i));
+                        return null;
+                    }));
+                }
+                done.add(pool.submit(() -> {
+                    // reads run off the store lock while files roll under them
+                    for (int i = 0; i < 200; i++) {
+                        var t = store.load("t" + i % writers);
+                        if (t == null) continue;
+                        t.segments().forEach(s -> assertEquals("text " + s.label().substring(1), s.text()));
+                    }
+                    return null;
+                }));
+                for (var d : done) d.get(30, TimeUnit.SECONDS);
+            } finally {
+                pool.shutdownNow();
+            }
+            assertTrue(store.stats().files() > 1);
+        }
+        try (var store = open(4096)) {
+            for (int w = 0; w < writers; w++) {
+                var labels = store.load("t" + w).segments().stream().map(Segment::label).toList();
+                assertEquals(IntStream.range(0, perWriter).mapToObj(i -> "s" + i).toList(), labels);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MainContentTests {
+
+    /** A corpus page: what must survive extraction and what is boilerplate. */
+    private record Page(String file, List<String> keep, List<String> drop) {}
+
+    private static final List<Page> CORPUS = List.of(
+            new Page("news-article.html",
+                    List.of("# City council approves riverside transit plan", "£420 million programme",
+                            "## Concerns over cost", "- Phase two: dedicated bus lanes",
+                            "subject to final approval of the funding agreement"),
+                    List.of("We use cookies", "Politics", "Share on Facebook", "white elephant", "Most read",
+                            "morning briefing", "Registered in England and Wales")),
+            new Page("docs-config.html",
+                    List.of("# Configuration reference", "increasing order of precedence",
+                            "storage.segment-bytes | 1073741824", "  retention: 48h",
+                            "listener changes are picked up on the next reload"),
+                    List.of("Search the docs", "Quickstart", "Was this page helpful", "Apache License 2.0")),
+            new Page("blog-post.html",
+                    List.of("## Why our builds got three times faster", "twenty-four minutes",
+                            "only pays off once the build is reproducible"),
+                    List.of("Archive", "Tweet", "12 Responses", "Migrating to Java 21", "bicycle repair",
+                            "Powered by")));
+
+    @Test
+    void corpusPagesKeepTheArticleAndShedBoilerplateTokens() throws IOException {
+        long fullTokens = 0;
+        long mainTokens = 0;
+        for (var page : CORPUS) {
+            String html = load(page.file());
+            String full = Jsoup.parse(html).text();
+            String main = MainContent.extract(html, "https://example.com/" + page.file(), 200_000);
+
+            for (var s : page.keep()) assertTrue(main.contains(s), page.file() + " lost \"" + s + "\":\n" + main);
+            for (var s : page.drop()) assertFalse(main.contains(s), page.file() + " kept \"" + s + "\":\n" + main);
+
+            int before = TokenEstimator.estimate(full);
+            int after = TokenEstimator.estimate(main);
+            assertTrue(after < before * 0.85, page.file() + ": " + before + " -> " + after);
+            fullTokens += before;
+            mainTokens += after;
+        }
+        assertTrue(mainTokens < fullTokens * 0.7, fullTokens + " -> " + mainTokens);
+    }
+
+    @Test
+    void paragraphsRepeatedAcrossPagesOfAThreadAreSentOnce() throws IOException {
+        String note = "Note: this documentation applies to Acme Queue 3.x.";
+        String config = MainContent.extract(load("docs-config.html"), "https://example.com/config", 200_000);
+        String limits = MainContent.extract(load("docs-limits.html"), "https://example.com/limits", 200_000);
+        assertTrue(config.contains(note) && limits.contains(note));
+
+        // the thread already holds the config page; the limits page is fetched in a later turn
+        var seen = new HashSet<Long>();
+        for (long fp : MainContent.fingerprints(config)) seen.add(fp);
+        String deduped = MainContent.dropRepeated(limits, seen);
+
+        assertFalse(deduped.contains(note), deduped);
+        assertTrue(deduped.startsWith("# Limits and quotas"), "headings are never dropped");
+        assertTrue(deduped.contains("- Maximum message size: 1 MiB, including headers."));
+        assertTrue(deduped.contains("5,000 messages or 50 MiB per second"));
+        assertTrue(deduped.length() < limits.length());
+    }
+
+    private static String load(String file) throws IOException {
+        try (InputStream in = MainContentTests.class.getResourceAsStream("/web-corpus/" + file)) {
+            assertNotNull(in, file);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemorySummarizerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<CompletableFuture<String>> calls = new CopyOnWriteArrayList<>();
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private final ClaudeService claude = new ClaudeService(null, null, new PromptBudgetPlanner(200_000, 2_000, 4),
+            null, null, registry) {
+        @Override
+        public CompletableFuture<String> chatOnceAsync(WrappedRequest wrapped, String threadId) {
+            prompts.add(wrapped.request().messages().get(0).content());
+            var call = new CompletableFuture<String>();
+            calls.add(call);
+            return call;
+        }
+    };
+    // watermark 0.75 x 10_000 chars, summarize down to 0.4 x 10_000
+    private final ThreadMemoryService memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 10_000, 1 << 20, 60);
+    private final MemorySummarizer summarizer = new MemorySummarizer(memory, claude, registry, true, 10_000,
+            0.75, 0.4, 500, 2, 60);
+
+    @AfterEach
+    void stop() {
+        summarizer.shutdown();
+    }
+
+    @Test
+    void olderSegmentsAreSummarizedOnceWithTheirLabels() throws Exception {
+        memory.append("t", "report.pdf", "r".repeat(3000));
+        memory.append("t", "https://example.com/spec", "s".repeat(3000));
+        memory.append("t", "notes.txt", "n".repeat(2000)); // crosses the watermark
+        memory.append("t", "latest.docx", "l".repeat(1000)); // still above: no second request
+
+        var call = awaitCall(0);
+        Thread.sleep(100);
+        assertEquals(1, calls.size(), "one pending summary per thread");
+        assertTrue(prompts.get(0).contains("=== report.pdf ==="));
+        assertTrue(prompts.get(0).contains("=== https://example.com/spec ==="));
+        assertFalse(prompts.get(0).contains("=== notes.txt ==="), "recent segments stay verbatim");
+
+        call.complete("=== report.pdf ===\nQ3 revenue\n=== https://example.com/spec ===\nAPI v2");
+
+        // oldest first until the rest fits the 4_000-char target
+        var segments = awaitSegments(3);
+        assertEquals("summary: report.pdf, https://example.com/spec", segments.get(0).label());
+        assertEquals(List.of("notes.txt", "latest.docx"), segments.subList(1, 3).stream().map(ThreadMemoryService.Segment::label).toList());
+        assertTrue(memory.context("t").get(0).block().contains("Q3 revenue"));
+        assertEquals(1.0, registry.get("memory.summaries").tag("outcome", "ok").counter().count());
+    }
+
+    @Test
+    void summaryOfAThreadThatChangedMeanwhileIsDropped() throws Exception {
+        memory.append("t", "a.pdf", "a".repeat(4000));
+        memory.append("t", "b.pdf", "b".repeat(4000));
+
+        var call = awaitCall(0);
+        memory.clear("t");
+        memory.append("t", "c.pdf", "c");
+        call.complete("=== a.pdf ===\nsummary");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.find("memory.summaries").tag("outcome", "stale").counter() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1.0, registry.get("memory.summaries").tag("outcome", "stale").counter().count());
+        assertEquals(List.of(new ThreadMemoryService.Segment("c.pdf", "c")), memory.segments("t"));
+    }
+
+    @Test
+    void failedSummaryCallLeavesTheMemoryAlone() throws Exception {
+        memory.append("t", "a.pdf", "a".repeat(4000));
+        memory.append("t", "b.pdf", "b".repeat(4000));
+        var before = memory.segments("t");
+
+        awaitCall(0).complete(ClaudeService.ERROR_PREFIX + "Too many requests");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.find("memory.summaries").tag("outcome", "failed").counter() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1.0, registry.get("memory.summaries").tag("outcome", "failed").counter().count());
+        assertEquals(before, memory.segments("t"));
+    }
+
+    private CompletableFuture<String> awaitCall(int i) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.size() <= i && System.nanoTime() < deadline) Thread.sleep(10);
+        return calls.get(i);
+    }
+
+    private List<ThreadMemoryService.Segment> awaitSegments(int n) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (memory.segments("t").size() != n && System.nanoTime() < deadline) Thread.sleep(10);
+        return memory.segments("t");
+    }
+}
@@ -0,0 +1,100 @@
+package com.dct.aws_ai_chatbot.service;
+
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ChatRequest;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.ContextSegment;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.Message;
+import com.dct.aws_ai_chatbot.dto.ChatDtos.WrappedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.bedrockruntime.model.BedrockRuntimeException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRouterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ModelRouter router(long cooldownMillis) {
+        return new ModelRouter(registry, "large", "fast", 4000, 1024, 20, 5, 0.3, 2000, cooldownMillis);
+    }
+
+    private static PromptBudgetPlanner.Plan plan(Integer maxTokens, List<ContextSegment> turnContext, int inputTokens) {
+        var req = new ChatRequest(List.of(new Message("user", "and in Paris?")), "sys", maxTokens, null, null);
+        return new PromptBudgetPlanner.Plan(new WrappedRequest(req, null, turnContext),
+                190_000, inputTokens, inputTokens, 0, 1.0, false);
+    }
+
+    @Test
+    void smallFollowUpsGoFastAndEverythingElseLarge() {
+        var router = router(30_000);
+
+        assertEquals(new ModelRouter.Route(ModelRouter.Tier.FAST, "small"), router.classify(plan(null, null, 300)));
+        assertEquals(new ModelRouter.Route(ModelRouter.Tier.FAST, "small"), router.classify(plan(512, null, 4000)));
+        assertEquals("attachments", router.classify(plan(null, List.of(ContextSegment.of("a.pdf", "x")), 300)).reason());
+        assertEquals("input", router.classify(plan(null, null, 4001)).reason());
+        assertEquals("output", router.classify(plan(4000, null, 300)).reason());
+
+        var off = new ModelRouter(registry, "large", "", 4000, 1024, 20, 5, 0.3, 2000, 30_000);
+        var route = off.classify(plan(null, null, 300));
+        assertEquals(ModelRouter.Tier.LARGE, route.tier());
+        assertEquals("large", off.pick(route));
+    }
+
+    @Test
+    void degradedModelFailsOverUntilTheCooldownEnds() throws InterruptedException {
+        var router = router(200);
+        var fast = router.classify(plan(null, null, 300));
+        assertEquals("fast", router.pick(fast));
+
+        // throttling on the fast model: 2 of 5 failed is past the 0.3 error-rate threshold
+        for (int i = 0; i < 3; i++) router.record("fast", BedrockAdmission.Outcome.OK, -1);
+        router.record("fast", BedrockAdmission.Outcome.THROTTLED, -1);
+        router.record("fast", BedrockAdmission.Outcome.THROTTLED, -1);
+
+        assertEquals("large", router.pick(fast));
+        assertEquals(0.0, registry.get("bedrock.model.healthy").tag("model", "fast").gauge().value());
+        assertEquals(1.0, registry.get("bedrock.route").tag("model", "large").tag("failover", "true").counter().count());
+
+        Thread.sleep(250);
+        assertEquals("fast", router.pick(fast), "back in rotation after the cooldown");
+        assertEquals(0, router.stats().models().get(1).samples(), "with a fresh window");
+    }
+
+    @Test
+    void rejectedRequestsDoNotCountAgainstTheModel() {
+        var router = router(30_000);
+        var fast = router.classify(plan(null, null, 300));
+        var validation = BedrockRuntimeException.builder().message("ValidationException").statusCode(400).build();
+        var server = BedrockRuntimeException.builder().message("InternalServerException").statusCode(500).build();
+        assertEquals(BedrockAdmission.Outcome.REJECTED, BedrockAdmission.outcomeOf(validation));
+        assertEquals(BedrockAdmission.Outcome.ERROR, BedrockAdmission.outcomeOf(server));
+
+        for (int i = 0; i < 10; i++) router.record("fast", BedrockAdmission.outcomeOf(validation), -1);
+        assertEquals("fast", router.pick(fast));
+        assertEquals(0, router.stats().models().get(1).samples());
+
+        for (int i = 0; i < 5; i++) router.record("fast", BedrockAdmission.outcomeOf(server), -1);
+        assertEquals("large", router.pick(fast));
+    }
+
+    @Test
+    void slowFirstTokensCountAsDegradedButLongGenerationsDoNot() {
+        var router = router(30_000);
+        var large = router.classify(plan(null, List.of(ContextSegment.of("https://x", "x")), 300));
+
+        // long non-streaming answers report no TTFT and don't move the latency signal
+        for (int i = 0; i < 10; i++) router.record("large", BedrockAdmission.Outcome.OK, -1);
+        assertEquals("large", router.pick(large));
+
+        for (int i = 0; i < 10; i++) router.record("large", BedrockAdmission.Outcome.OK, 5_000_000_000L);
+        assertEquals("fast", router.pick(large));
+        var stats = router.stats();
+        assertTrue(stats.models().get(0).degraded());
+        assertFalse(stats.models().get(1).degraded());
+        assertEquals(1, stats.failovers());
+    }
+}
@@ -0,0 +1,79 @@
+package com.dct.aws_ai_chatbot.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestStagesTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RequestStages stages = new RequestStages(registry, 500, 8);
+
+    @AfterEach
+    void stop() {
+        stages.shutdown();
+    }
+
+    @Test
+    void stagesOverlapAndALateStageDegradesAtTheDeadline() {
+        var timings = new StageTimings(registry, "test");
+        var graph = stages.begin(timings);
+        var bothStarted = new CountDownLatch(2);
+        var cancelled = new CountDownLatch(1);
+
+        long t0 = System.nanoTime();
+        var fast = graph.stage("links", () -> {
+            bothStarted.countDown();
+            // only returns if the other stage runs at the same time
+            return bothStarted.await(400, TimeUnit.MILLISECONDS) ? "fetched" : "sequential";
+        }, e -> "fallback");
+        var late = graph.stage("extract", () -> {
+            bothStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+                return "extracted";
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                throw e;
+            }
+        }, e -> e instanceof TimeoutException ? "timed out" : "failed");
+
+        assertEquals("fetched", fast.await());
+        assertEquals("timed out", late.await());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        assertTrue(millis < 2_000, "one deadline for the graph, took " + millis + " ms");
+
+        assertEquals(1.0, registry.get("chat.stage.degraded").tag("stage", "extract").tag("reason", "timeout")
+                .counter().count());
+        assertTrue(timings.serverTiming().contains("links;dur="));
+        assertTrue(awaitQuietly(cancelled), "the late stage is interrupted, not left running");
+    }
+
+    @Test
+    void aFailedStageYieldsItsFallback() {
+        var graph = stages.begin(new StageTimings(registry, "test"));
+        var failing = graph.stage("memory", () -> {
+            throw new IllegalStateException("store unavailable");
+        }, e -> "no memory: " + e.getMessage());
+
+        assertEquals("no memory: store unavailable", failing.await());
+        assertEquals(1.0, registry.get("chat.stage.degraded").tag("stage", "memory").tag("reason", "failed")
+                .counter().count());
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.dct.aws_ai_chatbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreadMemoryServiceTests {
+
+    @Test
+    void contextBlocksAreRenderedOnceAndSharedAcrossTurns() {
+        var memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 1_000, 1 << 20, 60);
+        memory.append("t", "a.txt", "a".repeat(400));
+        memory.append("t", "b.txt", "b".repeat(400));
+
+        var turn1 = memory.context("t");
+        assertSame(turn1, memory.context("t"), "unchanged memory is the same list");
+        assertEquals("=== a.txt ===\n" + "a".repeat(400), turn1.get(0).block());
+
+        // a new segment trims the oldest: the survivor keeps its block, only the new one is rendered
+        memory.append("t", "c.txt", "c".repeat(400));
+        var turn2 = memory.context("t");
+        assertEquals(3, turn2.size());
+        assertEquals("[memory trimmed]", turn2.get(0).block());
+        assertSame(turn1.get(1), turn2.get(1));
+        assertEquals("=== c.txt ===\n" + "c".repeat(400), turn2.get(2).block());
+    }
+
+    @Test
+    void stickyUploadDigestsLeaveWithTheirSegments() {
+        var memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 1_000, 1 << 20, 60);
+        assertTrue(memory.appendOnce("t", "d-a", "a.txt", "a".repeat(400)));
+        assertFalse(memory.appendOnce("t", "d-a", "a.txt", "a".repeat(400)), "still held");
+        assertNull(memory.renderedBlock("t", "d-a"), "not rendered yet");
+        assertSame(memory.context("t").get(0), memory.renderedBlock("t", "d-a"));
+
+        // trimmed out by newer segments: the next upload of a.txt is new content again
+        memory.append("t", "b.txt", "b".repeat(400));
+        memory.append("t", "c.txt", "c".repeat(400));
+        memory.context("t");
+        assertNull(memory.renderedBlock("t", "d-a"));
+        assertTrue(memory.appendOnce("t", "d-a", "a.txt", "a".repeat(400)));
+
+        // summarized away
+        var prefix = memory.segments("t");
+        assertTrue(memory.replacePrefix("t", prefix, new ThreadMemoryService.Segment("summary", "short")));
+        memory.context("t");
+        assertNull(memory.renderedBlock("t", "d-a"));
+        assertEquals(List.of(new ThreadMemoryService.Segment("summary", "short")), memory.segments("t"));
+    }
+
+    @Test
+    void paragraphFingerprintsAreComputedOncePerSegment() {
+        var memory = new ThreadMemoryService(ThreadMemoryStore.NONE, 10_000, 1 << 20, 60);
+        String para = "A paragraph long enough to count as a repeat if another page carried it too.";
+        memory.append("t", "https://a", para + "\n\n# Heading");
+        var first = memory.fingerprints("t");
+        assertEquals(1, first.get(0).paragraphs().length, "headings are never fingerprinted");
+
+        memory.append("t", "https://b", "b".repeat(100));
+        var second = memory.fingerprints("t");
+        assertSame(first.get(0), second.get(0));
+        assertEquals("https://b", second.get(1).label());
+    }
+}
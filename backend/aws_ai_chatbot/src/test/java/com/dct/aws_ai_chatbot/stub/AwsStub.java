@@ -0,0 +1,321 @@
+package com.dct.aws_ai_chatbot.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Localhost stand-in for the AWS calls the service makes, speaking the real wire protocols so the
+ * production SDK clients can be pointed at it ({@code app.bedrock.endpoint}, {@code app.textract.endpoint}):
+ * <ul>
+ *   <li>{@code POST /model/{id}/converse}: Converse, one JSON answer after first-token latency plus generation;</li>
+ *   <li>{@code POST /model/{id}/converse-stream}: ConverseStream, {@code application/vnd.amazon.eventstream}
+ *       frames (messageStart, contentBlockDelta..., contentBlockStop, messageStop, metadata) paced at the
+ *       configured token rate;</li>
+ *   <li>{@code POST /} with {@code X-Amz-Target: Textract.DetectDocumentText}: a few LINE blocks;</li>
+ *   <li>{@code GET /pages/{n}.html}: an article page with boilerplate, for link workloads.</li>
+ * </ul>
+ * Calls beyond {@code maxConcurrent}, or a random {@code throttleRate} share of them, are answered with
+ * the service's throttling error. Run standalone with {@link #main}.
+ */
+public final class AwsStub implements AutoCloseable {
+
+    /**
+     * Stub behaviour. {@code maxConcurrent} 0 = unlimited; {@code throttleRate} is a share in [0, 1].
+     * Each field maps to a {@code stub.*} system property in {@link #fromSystemProperties}.
+     */
+    public record Options(long firstTokenMillis, double tokensPerSecond, int outputTokens,
+                          int maxConcurrent, double throttleRate, long ocrMillis) {
+
+        public static Options defaults() {
+            return new Options(300, 80, 120, 0, 0, 150);
+        }
+
+        public static Options fromSystemProperties() {
+            var d = defaults();
+            return new Options(
+                    Long.getLong("stub.first-token-ms", d.firstTokenMillis()),
+                    Double.parseDouble(System.getProperty("stub.tokens-per-second", String.valueOf(d.tokensPerSecond()))),
+                    Integer.getInteger("stub.output-tokens", d.outputTokens()),
+                    Integer.getInteger("stub.max-concurrent", d.maxConcurrent()),
+                    Double.parseDouble(System.getProperty("stub.throttle-rate", String.valueOf(d.throttleRate()))),
+                    Long.getLong("stub.ocr-ms", d.ocrMillis()));
+        }
+    }
+
+    public record Stats(long converse, long streams, long ocr, long pages, long throttled, int maxInFlight) {}
+
+    private static final String[] WORDS = {
+            "the", "stub", "answers", "with", "a", "steady", "stream", "of", "plain", "words", "so", "that",
+            "relay", "batching", "and", "token", "accounting", "see", "realistic", "deltas"};
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService threads;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong converse = new AtomicLong();
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong ocr = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private AwsStub(Options options, int port) throws IOException {
+        this.options = options;
+        var n = new AtomicInteger();
+        // every call sleeps through its latency on its own thread, like a connection held open by Bedrock
+        this.threads = Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r, "aws-stub-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(threads);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** Starts a stub on {@code port} (0 = any free port). */
+    public static AwsStub start(Options options, int port) throws IOException {
+        return new AwsStub(options, port);
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Stats stats() {
+        return new Stats(converse.get(), streams.get(), ocr.get(), pages.get(), throttled.get(), maxInFlight.get());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+
+    /** {@code -Dstub.port=8089} plus the {@code stub.*} options; runs until killed. */
+    public static void main(String[] args) throws Exception {
+        var stub = start(Options.fromSystemProperties(), Integer.getInteger("stub.port", 8089));
+        System.out.println("AWS stub listening on " + stub.endpoint() + " with " + stub.options);
+        System.out.println("  app.bedrock.endpoint=" + stub.endpoint());
+        System.out.println("  app.textract.endpoint=" + stub.endpoint());
+        Thread.currentThread().join();
+    }
+
+    // ----------------------------
+    // routing
+    // ----------------------------
+
+    private void handle(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        try {
+            if ("GET".equals(ex.getRequestMethod()) && path.startsWith("/pages/")) {
+                page(ex, path);
+                return;
+            }
+            byte[] body = ex.getRequestBody().readAllBytes();
+            String target = ex.getRequestHeaders().getFirst("X-Amz-Target");
+            boolean stream = path.startsWith("/model/") && path.endsWith("/converse-stream");
+            boolean textract = target != null && target.startsWith("Textract.");
+            if (!stream && !textract && !(path.startsWith("/model/") && path.endsWith("/converse"))) {
+                ex.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                if (shouldThrottle()) {
+                    throttled.incrementAndGet();
+                    if (textract) throttleJson(ex);
+                    else throttleRest(ex);
+                } else if (textract) {
+                    detectDocumentText(ex);
+                } else if (stream) {
+                    converseStream(ex, body.length);
+                } else {
+                    converse(ex, body.length);
+                }
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        } catch (IOException | InterruptedException e) {
+            // client went away (cancelled call) or the stub is stopping
+        } finally {
+            ex.close();
+        }
+    }
+
+    private boolean shouldThrottle() {
+        return options.maxConcurrent() > 0 && inFlight.get() > options.maxConcurrent()
+                || options.throttleRate() > 0 && ThreadLocalRandom.current().nextDouble() < options.throttleRate();
+    }
+
+    // ----------------------------
+    // Bedrock Converse / ConverseStream (REST-JSON, event stream)
+    // ----------------------------
+
+    private void converse(HttpExchange ex, int requestBytes) throws IOException, InterruptedException {
+        converse.incrementAndGet();
+        Thread.sleep(options.firstTokenMillis() + generationMillis(options.outputTokens()));
+        String json = "{\"output\":{\"message\":{\"role\":\"assistant\",\"content\":[{\"text\":\""
+                + answer(0, options.outputTokens()) + "\"}]}},\"stopReason\":\"end_turn\","
+                + usage(requestBytes) + "}";
+        send(ex, 200, "application/json", json.getBytes(StandardCharsets.UTF_8), Map.of());
+    }
+
+    private void converseStream(HttpExchange ex, int requestBytes) throws IOException, InterruptedException {
+        streams.incrementAndGet();
+        Thread.sleep(options.firstTokenMillis());
+        ex.getResponseHeaders().add("Content-Type", "application/vnd.amazon.eventstream");
+        ex.sendResponseHeaders(200, 0);
+        OutputStream out = ex.getResponseBody();
+
+        event(out, "messageStart", "{\"role\":\"assistant\"}");
+        // ~50 frames a second at most, like the service coalescing tokens at high rates
+        int perFrame = Math.max(1, (int) Math.ceil(options.tokensPerSecond() / 50));
+        for (int t = 0; t < options.outputTokens(); t += perFrame) {
+            int n = Math.min(perFrame, options.outputTokens() - t);
+            event(out, "contentBlockDelta",
+                    "{\"contentBlockIndex\":0,\"delta\":{\"text\":\"" + answer(t, n) + "\"}}");
+            Thread.sleep(generationMillis(n));
+        }
+        event(out, "contentBlockStop", "{\"contentBlockIndex\":0}");
+        event(out, "messageStop", "{\"stopReason\":\"end_turn\"}");
+        event(out, "metadata", "{" + usage(requestBytes) + "}");
+    }
+
+    private void throttleRest(HttpExchange ex) throws IOException {
+        send(ex, 429, "application/json", "{\"message\":\"Too many requests, please wait before trying again.\"}"
+                .getBytes(StandardCharsets.UTF_8), Map.of("x-amzn-ErrorType", "ThrottlingException"));
+    }
+
+    private String usage(int requestBytes) {
+        int in = Math.max(1, requestBytes / 4);
+        int out = options.outputTokens();
+        long latency = options.firstTokenMillis() + generationMillis(out);
+        return "\"usage\":{\"inputTokens\":" + in + ",\"outputTokens\":" + out + ",\"totalTokens\":" + (in + out)
+                + "},\"metrics\":{\"latencyMs\":" + latency + "}";
+    }
+
+    private long generationMillis(int tokens) {
+        return options.tokensPerSecond() <= 0 ? 0 : (long) (tokens * 1000 / options.tokensPerSecond());
+    }
+
+    /** Tokens {@code from} .. {@code from + n} of the canned answer, one word per token. */
+    private static String answer(int from, int n) {
+        var sb = new StringBuilder(n * 7);
+        for (int i = from; i < from + n; i++) sb.append(i == 0 ? "" : " ").append(WORDS[i % WORDS.length]);
+        return sb.toString();
+    }
+
+    // ----------------------------
+    // Textract DetectDocumentText (AWS JSON 1.1)
+    // ----------------------------
+
+    private void detectDocumentText(HttpExchange ex) throws IOException, InterruptedException {
+        ocr.incrementAndGet();
+        Thread.sleep(options.ocrMillis());
+        String json = """
+                {"DocumentMetadata":{"Pages":1},"Blocks":[
+                 {"BlockType":"PAGE","Id":"p1"},
+                 {"BlockType":"LINE","Id":"l1","Confidence":99.1,"Text":"SCANNED INVOICE 2024-0117"},
+                 {"BlockType":"LINE","Id":"l2","Confidence":98.7,"Text":"Total due: 1,284.50 EUR"},
+                 {"BlockType":"LINE","Id":"l3","Confidence":97.9,"Text":"Payment within 30 days of receipt"}]}""";
+        send(ex, 200, "application/x-amz-json-1.1", json.getBytes(StandardCharsets.UTF_8), Map.of());
+    }
+
+    private void throttleJson(HttpExchange ex) throws IOException {
+        send(ex, 400, "application/x-amz-json-1.1",
+                "{\"__type\":\"ThrottlingException\",\"message\":\"Rate exceeded\"}".getBytes(StandardCharsets.UTF_8),
+                Map.of());
+    }
+
+    // ----------------------------
+    // link pages
+    // ----------------------------
+
+    private void page(HttpExchange ex, String path) throws IOException {
+        pages.incrementAndGet();
+        String n = path.substring("/pages/".length()).replace(".html", "");
+        var html = new StringBuilder(8192).append("<!DOCTYPE html><html><head><title>Report ").append(n)
+                .append("</title></head><body><div class=\"cookie-banner\"><p>We use cookies to improve your ")
+                .append("experience on this site. By continuing you accept our cookie policy.</p></div><nav><ul>");
+        for (int i = 0; i < 30; i++) html.append("<li><a href=\"/pages/").append(i).append(".html\">Section ").append(i).append("</a></li>");
+        html.append("</ul></nav><article><h1>Report ").append(n).append("</h1>");
+        for (int p = 0; p < 12; p++) {
+            html.append("<p>Paragraph ").append(p).append(" of report ").append(n)
+                    .append(": quarterly volumes, regional breakdowns, and the assumptions behind them are described ")
+                    .append("here in enough detail, with figures and caveats, to make the page worth reading.</p>");
+        }
+        html.append("</article><footer><p>Copyright the stub authors. All rights reserved.</p></footer></body></html>");
+        send(ex, 200, "text/html; charset=utf-8", html.toString().getBytes(StandardCharsets.UTF_8),
+                Map.of("Cache-Control", "max-age=60"));
+    }
+
+    private static void send(HttpExchange ex, int status, String contentType, byte[] body,
+                             Map<String, String> headers) throws IOException {
+        ex.getResponseHeaders().add("Content-Type", contentType);
+        headers.forEach(ex.getResponseHeaders()::add);
+        ex.sendResponseHeaders(status, body.length);
+        ex.getResponseBody().write(body);
+    }
+
+    // ----------------------------
+    // event-stream framing
+    // ----------------------------
+
+    private static void event(OutputStream out, String eventType, String json) throws IOException {
+        out.write(frame(Map.of(":message-type", "event", ":event-type", eventType, ":content-type", "application/json"),
+                json.getBytes(StandardCharsets.UTF_8)));
+        out.flush();
+    }
+
+    /**
+     * One {@code application/vnd.amazon.eventstream} message: total length and headers length (4 bytes
+     * each), CRC32 of those 8 bytes, the headers (1-byte name length, name, type 7 = string, 2-byte value
+     * length, value), the payload, and a CRC32 of everything before it.
+     */
+    private static byte[] frame(Map<String, String> headers, byte[] payload) {
+        var hb = new ByteArrayOutputStream();
+        headers.forEach((name, value) -> {
+            byte[] k = name.getBytes(StandardCharsets.UTF_8);
+            byte[] v = value.getBytes(StandardCharsets.UTF_8);
+            hb.write(k.length);
+            hb.writeBytes(k);
+            hb.write(7);
+            hb.write(v.length >>> 8);
+            hb.write(v.length);
+            hb.writeBytes(v);
+        });
+        byte[] h = hb.toByteArray();
+        int total = 12 + h.length + payload.length + 4;
+
+        var buf = ByteBuffer.allocate(total);
+        buf.putInt(total).putInt(h.length);
+        buf.putInt((int) crc(buf.array(), 0, 8));
+        buf.put(h).put(payload);
+        buf.putInt((int) crc(buf.array(), 0, total - 4));
+        return buf.array();
+    }
+
+    private static long crc(byte[] bytes, int off, int len) {
+        var crc = new CRC32();
+        crc.update(bytes, off, len);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,127 @@
+package com.dct.aws_ai_chatbot.stub;
+
+import com.dct.aws_ai_chatbot.service.TextractOcrService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.StopReason;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The stub is only useful if the production SDK clients accept what it sends. */
+class AwsStubTests {
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @AfterEach
+    void stop() throws Exception {
+        for (var c : closeables) c.close();
+    }
+
+    private AwsStub stub(AwsStub.Options options) throws Exception {
+        var stub = AwsStub.start(options, 0);
+        closeables.add(stub);
+        return stub;
+    }
+
+    private BedrockRuntimeAsyncClient bedrock(AwsStub stub) {
+        var client = BedrockRuntimeAsyncClient.builder().region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .endpointOverride(URI.create(stub.endpoint()))
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry()))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().protocol(Protocol.HTTP1_1))
+                .build();
+        closeables.add(client);
+        return client;
+    }
+
+    private static Message user(String text) {
+        return Message.builder().role(ConversationRole.USER).content(ContentBlock.fromText(text)).build();
+    }
+
+    @Test
+    void converseStreamEventFramesDecodeIntoTheAnswer() throws Exception {
+        var stub = stub(new AwsStub.Options(20, 2_000, 150, 0, 0, 10));
+        var client = bedrock(stub);
+
+        var text = new StringBuilder();
+        var deltas = new int[1];
+        var stop = new AtomicReference<StopReason>();
+        var outputTokens = new AtomicReference<Integer>();
+        var handler = ConverseStreamResponseHandler.builder()
+                .subscriber(ConverseStreamResponseHandler.Visitor.builder()
+                        .onContentBlockDelta(e -> {
+                            deltas[0]++;
+                            text.append(e.delta().text());
+                        })
+                        .onMessageStop(e -> stop.set(e.stopReason()))
+                        .onMetadata(e -> outputTokens.set(e.usage().outputTokens()))
+                        .build())
+                .build();
+        client.converseStream(ConverseStreamRequest.builder().modelId("stub-model").messages(user("hi")).build(), handler)
+                .get(10, TimeUnit.SECONDS);
+
+        String answer = client.converse(ConverseRequest.builder().modelId("stub-model").messages(user("hi")).build())
+                .get(10, TimeUnit.SECONDS).output().message().content().get(0).text();
+        assertEquals(answer, text.toString(), "stream and single-shot carry the same answer");
+        assertEquals(150, answer.split(" ").length);
+        assertTrue(deltas[0] > 1, "paced over several frames");
+        assertEquals(StopReason.END_TURN, stop.get());
+        assertEquals(150, outputTokens.get());
+        assertEquals(1, stub.stats().streams());
+    }
+
+    @Test
+    void throttledCallsSurfaceAsThrottlingExceptions() throws Exception {
+        var stub = stub(new AwsStub.Options(0, 0, 5, 0, 1.0, 0));
+
+        var ex = assertThrows(ExecutionException.class, () -> bedrock(stub)
+                .converse(ConverseRequest.builder().modelId("stub-model").messages(user("hi")).build())
+                .get(10, TimeUnit.SECONDS));
+
+        var throttle = assertInstanceOf(ThrottlingException.class, ex.getCause());
+        assertEquals(429, throttle.statusCode());
+        assertTrue(throttle.isThrottlingException());
+        assertEquals(1, stub.stats().throttled());
+    }
+
+    @Test
+    void textractEndpointOverrideReachesTheStub() throws Exception {
+        var stub = stub(AwsStub.Options.defaults());
+        // the OCR client uses the default credential chain; the stub doesn't check signatures
+        if (System.getProperty("aws.accessKeyId") == null && System.getenv("AWS_ACCESS_KEY_ID") == null) {
+            System.setProperty("aws.accessKeyId", "stub");
+            System.setProperty("aws.secretAccessKey", "stub");
+        }
+        var ocr = new TextractOcrService(new SimpleMeterRegistry(), "us-east-1", stub.endpoint());
+
+        String lines = ocr.detectLines(new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+
+        assertEquals("SCANNED INVOICE 2024-0117\nTotal due: 1,284.50 EUR\nPayment within 30 days of receipt", lines);
+        assertEquals(1, stub.stats().ocr());
+    }
+}